@@ -23,14 +23,24 @@
  */
 package de.triology.testdata.builder
 
-import org.codehaus.groovy.control.CompilerConfiguration
+import org.codehaus.groovy.runtime.InvokerHelper
+
+import de.triology.testdata.util.DefinitionSource
 
 /**
- * Executes a groovy script file with entity definitions.
+ * Executes a groovy script file with entity definitions.<br>
+ * <br>
+ * Compiled scripts are shared by all instances and reused when a script with the same content is executed again. At
+ * most 256 compiled scripts are kept, which can be changed with the system property
+ * {@code testdataloader.maxCachedScripts}. Less recently executed scripts are unloaded.
  */
 class EntitiesScriptExecutor {
 
+    private static final ScriptClassCache scriptClassCache =
+            new ScriptClassCache(Integer.getInteger('testdataloader.maxCachedScripts', 256))
+
     private List<EntityBuilderListener> listeners = []
+    private EntityBuilder builder
 
     /**
      * Executes a groovy script file with entity definitions provided by the passed Reader.
@@ -38,17 +48,53 @@ class EntitiesScriptExecutor {
      * @param reader - a Reader for the file containing the entity definitions.
      */
     public void execute(Reader reader) {
-        CompilerConfiguration compilerConfiguration = new CompilerConfiguration()
-        compilerConfiguration.scriptBaseClass = EntityBuilderScript.class.name
+        String scriptText = reader.text
+        executeScript(scriptText, ScriptClassCache.hash(scriptText))
+    }
 
+    /**
+     * Executes the groovy script file with entity definitions provided by the passed {@link DefinitionSource}.
+     *
+     * @param source - the {@link DefinitionSource} of the file containing the entity definitions.
+     */
+    public void execute(DefinitionSource source) {
+        executeScript(source.text, source.contentHash)
+    }
+
+    private void executeScript(String scriptText, String contentHash) {
+        builder = new EntityBuilder(this)
         Binding binding = new Binding()
-        binding.builder = new EntityBuilder(this)
+        binding.builder = builder
 
-        GroovyShell shell = new GroovyShell(this.class.classLoader, binding, compilerConfiguration)
-        Script script =  shell.parse(reader)
+        Class<Script> scriptClass = scriptClassCache.getScriptClass(scriptText, contentHash)
+        Script script = InvokerHelper.createScript(scriptClass, binding)
         script.run()
     }
 
+    /**
+     * Compiles the passed script, if it has not been compiled before, without executing it, so that a later execution
+     * of the same script does not need to compile it.
+     *
+     * @param source the {@link DefinitionSource} of the file containing the entity definitions
+     */
+    public static void compile(DefinitionSource source) {
+        scriptClassCache.getScriptClass(source.text, source.contentHash)
+    }
+
+    /**
+     * @return the current {@link ScriptClassStatistics} of the compiled scripts shared by all instances
+     */
+    public static ScriptClassStatistics getScriptClassStatistics() {
+        return scriptClassCache.statistics
+    }
+
+    /**
+     * Unloads all compiled scripts shared by all instances.
+     */
+    public static void clearScriptClassCache() {
+        scriptClassCache.clear()
+    }
+
     /**
      * Adds an {@link EntityBuilderListener} that gets notified every time an entity is completely created.
      * @param listener {@link EntityBuilderListener}
@@ -58,6 +104,17 @@ class EntitiesScriptExecutor {
         return this
     }
 
+    /**
+     * Tells whether the definition of an enclosing entity is still being executed. When called by an
+     * {@link EntityBuilderListener} this is true for nested entities and false for top level entities of a script,
+     * so listeners can tell when all entities created so far are completely built and consistently referenced.
+     *
+     * @return true if an entity is currently under construction
+     */
+    public boolean isEntityUnderConstruction() {
+        return builder != null && builder.entityUnderConstruction
+    }
+
     protected void fireEntityCreated(String entityName, Object entity) {
         listeners*.onEntityCreated(entityName, entity)
     }
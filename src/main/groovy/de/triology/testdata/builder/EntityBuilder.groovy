@@ -28,6 +28,7 @@ class EntityBuilder {
 
     private Map<String, ?> entitiesByName = [:]
     private EntitiesScriptExecutor executor
+    private int entitiesUnderConstruction = 0
 
     protected EntityBuilder(final EntitiesScriptExecutor executor) {
         this.executor = executor
@@ -49,12 +50,25 @@ class EntityBuilder {
 
         def rehydrated = entityData.rehydrate(entity, this, this)
         rehydrated.resolveStrategy = Closure.DELEGATE_FIRST
-        rehydrated.call()
+        entitiesUnderConstruction++
+        try {
+            rehydrated.call()
+        } finally {
+            entitiesUnderConstruction--
+        }
 
         executor.fireEntityCreated(entityName, entity)
         return entity
     }
 
+    /**
+     * @return true if the definition closure of at least one entity is still being executed, i.e. an entity completed
+     * right now is nested within another entity's definition
+     */
+    protected boolean isEntityUnderConstruction() {
+        return entitiesUnderConstruction > 0
+    }
+
     private <T> T createEntityInstance(final String entityName, final Class<T> entityClass) {
         if (entitiesByName[entityName]) {
             throw new EntityBuilderException(
@@ -0,0 +1,240 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.builder
+
+import groovy.transform.CompileStatic
+import groovy.transform.PackageScope
+import org.codehaus.groovy.control.CompilerConfiguration
+import org.codehaus.groovy.reflection.ClassInfo
+import org.codehaus.groovy.reflection.GroovyClassValue
+import org.codehaus.groovy.runtime.InvokerHelper
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryPoolMXBean
+import java.lang.reflect.Field
+import java.lang.reflect.Method
+import java.security.MessageDigest
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.FutureTask
+
+/**
+ * Compiles entity definition scripts with a single, shared {@link GroovyClassLoader} and caches the compiled script
+ * classes by the hash of the script's content, so that executing the same script again does not generate new
+ * classes.<br>
+ * <br>
+ * The cache holds at most {@code maxScripts} compiled scripts, plus the scripts that are being compiled concurrently.
+ * When a script is evicted, its script and closure classes are removed from the class loader's cache and the caches of
+ * the Groovy runtime, which allows the JVM to unload them. A script that is still being executed when it is evicted may
+ * stay loaded.
+ */
+@PackageScope
+class ScriptClassCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptClassCache)
+
+    private static final String SCRIPT_CLASS_PREFIX = 'EntityDefinition_'
+
+    private static final Object GLOBAL_CLASS_INFOS = findGlobalClassInfos()
+    private static final Method REMOVE_CLASS_INFO = GroovyClassValue.getMethod('remove', Class)
+
+    private final int maxScripts
+    private final ScriptClassLoader classLoader
+    private final Map<String, FutureTask<Class<Script>>> scriptClasses
+
+    private long compilations
+    private long cacheHits
+    private long evictions
+
+    /**
+     * @param maxScripts the maximum number of compiled scripts to keep
+     */
+    ScriptClassCache(int maxScripts) {
+        if (maxScripts < 1) {
+            throw new IllegalArgumentException("maxScripts must be positive but was $maxScripts")
+        }
+        this.maxScripts = maxScripts
+        CompilerConfiguration compilerConfiguration = new CompilerConfiguration()
+        compilerConfiguration.scriptBaseClass = EntityBuilderScript.class.name
+        this.classLoader = new ScriptClassLoader(ScriptClassCache.classLoader, compilerConfiguration)
+        this.scriptClasses = new LinkedHashMap<String, FutureTask<Class<Script>>>(16, 0.75f, true)
+    }
+
+    /**
+     * Returns the compiled class of the passed script, compiling it if it has not been compiled before or has been
+     * evicted. Concurrent requests for the same script wait for a single compilation.
+     *
+     * @param scriptText the script
+     * @param contentHash the hex encoded hash of the script, as provided by {@link #hash(String)}
+     * @return the script class
+     */
+    Class<Script> getScriptClass(String scriptText, String contentHash) {
+        FutureTask<Class<Script>> compilation
+        boolean compileHere = false
+        synchronized (this) {
+            compilation = scriptClasses[contentHash]
+            if (compilation == null) {
+                compilation = new FutureTask<Class<Script>>({ compile(scriptText, contentHash) } as Callable)
+                scriptClasses[contentHash] = compilation
+                compileHere = true
+                compilations++
+                evictEldestIfFull()
+            } else {
+                cacheHits++
+            }
+        }
+
+        if (compileHere) {
+            compilation.run()
+            synchronized (this) {
+                evictEldestIfFull()
+            }
+        }
+        try {
+            return compilation.get()
+        } catch (ExecutionException e) {
+            synchronized (this) {
+                if (scriptClasses[contentHash].is(compilation)) {
+                    scriptClasses.remove(contentHash)
+                }
+            }
+            throw e.cause
+        }
+    }
+
+    /**
+     * Compiles the passed script with the shared class loader.
+     */
+    protected Class<Script> compile(String scriptText, String contentHash) {
+        String className = SCRIPT_CLASS_PREFIX + contentHash
+        LOG.debug("compiling entity definition script {}", className)
+        GroovyCodeSource codeSource = new GroovyCodeSource(scriptText, "${className}.groovy", '/groovy/script')
+        codeSource.cachable = false
+        return classLoader.parseClass(codeSource, false)
+    }
+
+    /**
+     * Evicts the least recently used scripts whose compilation has completed until at most {@code maxScripts} remain.
+     * Scripts that are still being compiled are skipped, as their classes are not defined yet and could not be
+     * unloaded. They are evicted once their compilation has completed. The most recently used script is never evicted.
+     */
+    private void evictEldestIfFull() {
+        Iterator<Map.Entry<String, FutureTask<Class<Script>>>> eldestFirst = scriptClasses.entrySet().iterator()
+        while (scriptClasses.size() > maxScripts && eldestFirst.hasNext()) {
+            Map.Entry<String, FutureTask<Class<Script>>> entry = eldestFirst.next()
+            if (entry.value.isDone() && eldestFirst.hasNext()) {
+                eldestFirst.remove()
+                evictions++
+                unload(SCRIPT_CLASS_PREFIX + entry.key)
+            }
+        }
+    }
+
+    /**
+     * Removes the classes of a script from all caches of the class loader and the Groovy runtime that reference them
+     * strongly, so that the JVM can unload them once their instances are gone. Statically compiled, as dynamic call
+     * sites would cache the classes passed through them.
+     */
+    @CompileStatic
+    private void unload(String scriptClassName) {
+        LOG.debug("unloading entity definition script {}", scriptClassName)
+        for (Class scriptOrClosureClass : classLoader.loadedClasses) {
+            String name = scriptOrClosureClass.name
+            if (name == scriptClassName || name.startsWith(scriptClassName + '$')) {
+                classLoader.removeClass(name)
+                GroovySystem.metaClassRegistry.removeMetaClass(scriptOrClosureClass)
+                InvokerHelper.removeClass(scriptOrClosureClass)
+                removeClassInfo(scriptOrClosureClass)
+            }
+        }
+    }
+
+    /**
+     * Removes the {@link ClassInfo} Groovy keeps for every class it has seen. Unless Groovy runs with
+     * {@code -Dgroovy.use.classvalue=true}, these are held in a global map and reference their class strongly, which
+     * keeps every script class loaded. Groovy 2.4.7 has no public API to remove them, so the map is accessed
+     * reflectively.
+     */
+    @CompileStatic
+    private static void removeClassInfo(Class scriptOrClosureClass) {
+        if (GLOBAL_CLASS_INFOS != null) {
+            REMOVE_CLASS_INFO.invoke(GLOBAL_CLASS_INFOS, scriptOrClosureClass)
+        }
+    }
+
+    private static Object findGlobalClassInfos() {
+        try {
+            Field globalClassValue = ClassInfo.getDeclaredField('globalClassValue')
+            globalClassValue.accessible = true
+            return globalClassValue.get(null)
+        } catch (ReflectiveOperationException | SecurityException e) {
+            LOG.warn('cannot access the ClassInfo map of the Groovy runtime, evicted script classes are not unloaded ' +
+                    'unless groovy.use.classvalue is set to true', e)
+            return null
+        }
+    }
+
+    /**
+     * Evicts all scripts.
+     */
+    synchronized void clear() {
+        new ArrayList<String>(scriptClasses.keySet()).each {
+            scriptClasses.remove(it)
+            evictions++
+            unload(SCRIPT_CLASS_PREFIX + it)
+        }
+    }
+
+    /**
+     * @return a snapshot of the cache's and the JVM's class statistics
+     */
+    synchronized ScriptClassStatistics getStatistics() {
+        def classLoading = ManagementFactory.getClassLoadingMXBean()
+        MemoryPoolMXBean metaspace = ManagementFactory.getMemoryPoolMXBeans().find { it.name == 'Metaspace' }
+        return new ScriptClassStatistics(scriptClasses.size(), compilations, cacheHits, evictions,
+                classLoading.loadedClassCount, classLoading.unloadedClassCount,
+                metaspace ? metaspace.usage.used : -1L)
+    }
+
+    /**
+     * @param scriptText a script
+     * @return the hex encoded SHA-256 hash of the script's UTF-8 representation
+     */
+    static String hash(String scriptText) {
+        return MessageDigest.getInstance('SHA-256').digest(scriptText.getBytes('UTF-8')).encodeHex().toString()
+    }
+
+    private static class ScriptClassLoader extends GroovyClassLoader {
+
+        ScriptClassLoader(ClassLoader parent, CompilerConfiguration compilerConfiguration) {
+            super(parent, compilerConfiguration)
+        }
+
+        void removeClass(String name) {
+            removeClassCacheEntry(name)
+        }
+    }
+}
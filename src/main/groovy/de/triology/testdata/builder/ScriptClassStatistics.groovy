@@ -0,0 +1,106 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.builder
+
+/**
+ * A snapshot of the number of entity definition scripts compiled by {@link EntitiesScriptExecutor}s and of the JVM's
+ * class and metaspace statistics, e. g. to verify that memory consumption stays flat over many loads.
+ */
+class ScriptClassStatistics {
+
+    private final int cachedScripts
+    private final long compilations
+    private final long cacheHits
+    private final long evictions
+    private final int loadedClassCount
+    private final long unloadedClassCount
+    private final long metaspaceUsedBytes
+
+    ScriptClassStatistics(int cachedScripts, long compilations, long cacheHits, long evictions, int loadedClassCount,
+                          long unloadedClassCount, long metaspaceUsedBytes) {
+        this.cachedScripts = cachedScripts
+        this.compilations = compilations
+        this.cacheHits = cacheHits
+        this.evictions = evictions
+        this.loadedClassCount = loadedClassCount
+        this.unloadedClassCount = unloadedClassCount
+        this.metaspaceUsedBytes = metaspaceUsedBytes
+    }
+
+    /**
+     * @return the number of compiled scripts currently cached
+     */
+    int getCachedScripts() {
+        return cachedScripts
+    }
+
+    /**
+     * @return the number of scripts compiled so far
+     */
+    long getCompilations() {
+        return compilations
+    }
+
+    /**
+     * @return the number of script executions that reused an already compiled script
+     */
+    long getCacheHits() {
+        return cacheHits
+    }
+
+    /**
+     * @return the number of compiled scripts evicted from the cache so far
+     */
+    long getEvictions() {
+        return evictions
+    }
+
+    /**
+     * @return the number of classes currently loaded in the JVM
+     */
+    int getLoadedClassCount() {
+        return loadedClassCount
+    }
+
+    /**
+     * @return the number of classes unloaded by the JVM so far
+     */
+    long getUnloadedClassCount() {
+        return unloadedClassCount
+    }
+
+    /**
+     * @return the used metaspace in bytes or -1, if the JVM does not report a metaspace
+     */
+    long getMetaspaceUsedBytes() {
+        return metaspaceUsedBytes
+    }
+
+    @Override
+    String toString() {
+        return "$cachedScripts cached scripts, $compilations compilations, $cacheHits cache hits, $evictions " +
+                "evictions, $loadedClassCount loaded classes, $unloadedClassCount unloaded classes, " +
+                "$metaspaceUsedBytes bytes metaspace used"
+    }
+}
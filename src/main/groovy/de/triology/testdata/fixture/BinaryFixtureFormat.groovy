@@ -0,0 +1,133 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.fixture
+
+import groovy.transform.PackageScope
+
+import java.lang.reflect.Field
+import java.lang.reflect.Method
+import java.lang.reflect.Modifier
+
+/**
+ * Constants and helpers shared by {@link BinaryFixtureWriter} and {@link BinaryFixtureReader}.<br>
+ * <br>
+ * A binary fixture consists of
+ * <ol>
+ * <li>a header: the magic number {@code TDLF} and the format version,</li>
+ * <li>a string table holding all class, field and entity names and string values, referenced by index,</li>
+ * <li>the class table: for each entity class its name and the names of its persistent fields,</li>
+ * <li>the entity table: for each entity in creation order the index of its class and its name,</li>
+ * <li>the columns: for each class and each of its fields the values of all entities of that class, in creation
+ * order. References to entities are stored as their index in the entity table.</li>
+ * </ol>
+ * All counts and indexes are stored as variable length integers.
+ */
+@PackageScope
+class BinaryFixtureFormat {
+
+    static final int MAGIC = 0x54444C46 // TDLF
+    static final int VERSION = 1
+
+    static final int NULL = 0
+    static final int ENTITY_REFERENCE = 1
+    static final int STRING = 2
+    static final int BOOLEAN_TRUE = 3
+    static final int BOOLEAN_FALSE = 4
+    static final int BYTE = 5
+    static final int SHORT = 6
+    static final int INTEGER = 7
+    static final int LONG = 8
+    static final int FLOAT = 9
+    static final int DOUBLE = 10
+    static final int CHARACTER = 11
+    static final int BIG_INTEGER = 12
+    static final int BIG_DECIMAL = 13
+    static final int DATE = 14
+    static final int CALENDAR = 15
+    static final int ENUM = 16
+    static final int BYTE_ARRAY = 17
+    static final int COLLECTION = 18
+    static final int MAP = 19
+    static final int PARSED_VALUE = 20
+    static final int OBJECT = 21
+
+    private static final List<String> PARSE_METHODS = ['parse', 'fromString', 'valueOf', 'getInstance']
+
+    private BinaryFixtureFormat() {}
+
+    /**
+     * @return a public static method of the passed class that creates an instance from its {@code toString()}
+     * representation, like {@code LocalDate.parse(CharSequence)} or {@code UUID.fromString(String)}, or {@code null}
+     * if there is none
+     */
+    static Method findParseMethod(Class type) {
+        return type.methods.find { Method method ->
+            Modifier.isStatic(method.modifiers) && method.name in PARSE_METHODS &&
+                    method.parameterTypes.length == 1 && method.parameterTypes[0] in [String, CharSequence] &&
+                    type.isAssignableFrom(method.returnType)
+        }
+    }
+
+    /**
+     * @return the fields of the passed class and its superclasses that are stored in a binary fixture, i. e. all
+     * fields that are neither static, transient nor synthetic
+     */
+    static List<Field> persistentFieldsOf(Class type) {
+        List<Field> fields = []
+        for (Class current = type; current != null && current != Object; current = current.superclass) {
+            fields.addAll(current.declaredFields.findAll { Field field ->
+                int modifiers = field.modifiers
+                !Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.synthetic
+            })
+        }
+        fields*.accessible = true
+        return fields
+    }
+
+    static void writeVarInt(DataOutput out, int value) {
+        int remaining = value
+        while ((remaining & ~0x7F) != 0) {
+            out.writeByte((remaining & 0x7F) | 0x80)
+            remaining >>>= 7
+        }
+        out.writeByte(remaining)
+    }
+
+    static int readVarInt(DataInput input) {
+        int value = 0
+        int shift = 0
+        int currentByte
+        while (true) {
+            currentByte = input.readUnsignedByte()
+            value |= (currentByte & 0x7F) << shift
+            if ((currentByte & 0x80) == 0) {
+                return value
+            }
+            shift += 7
+            if (shift > 28) {
+                throw new IOException('malformed variable length integer in binary fixture')
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.fixture
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import de.triology.testdata.builder.EntityBuilderListener
+
+import java.lang.reflect.Constructor
+import java.lang.reflect.Field
+import java.lang.reflect.Method
+import java.sql.Timestamp
+
+import static de.triology.testdata.fixture.BinaryFixtureFormat.*
+
+/**
+ * Reads entities from a binary fixture written by a {@link BinaryFixtureWriter}. All entities are instantiated using
+ * their no-arg constructors and their fields are set directly, no entity definition script is executed. Collections
+ * and maps are filled only after all other fields of all entities are set, so that entities overriding
+ * {@code hashCode}, {@code equals} or {@code compareTo} are placed correctly. Collections and maps that are created by
+ * the no-arg constructor of an entity are reused if they are of the stored class, which keeps e.g. the comparator of a
+ * {@code TreeSet}. Afterwards the registered {@link EntityBuilderListener}s are notified about each entity in the order
+ * the entities were originally created.
+ */
+class BinaryFixtureReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryFixtureReader)
+
+    private List<EntityBuilderListener> listeners = []
+    private ClassLoader classLoader = Thread.currentThread().contextClassLoader ?: BinaryFixtureReader.classLoader
+
+    private List<String> strings
+    private Object[] entities
+    private List<Closure> pendingFills
+
+    /**
+     * Adds an {@link EntityBuilderListener} that is notified about each entity read.
+     *
+     * @param listener {@link EntityBuilderListener}
+     * @return this
+     */
+    BinaryFixtureReader addEntityBuilderListener(EntityBuilderListener listener) {
+        listeners += listener
+        return this
+    }
+
+    /**
+     * Reads all entities from the passed stream and notifies the registered listeners about them.
+     *
+     * @param input the stream to read from, it is not closed
+     * @return the number of entities read
+     * @throws IOException if the stream does not contain a valid binary fixture
+     */
+    int read(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(input))
+        readHeader(data)
+        int stringCount = readVarInt(data)
+        strings = new ArrayList<>(stringCount)
+        stringCount.times { strings << readString(data) }
+
+        List<Class> classes = []
+        Map<Class, List<Field>> fieldsByClass = [:]
+        readClassTable(data, classes, fieldsByClass)
+
+        int entityCount = readVarInt(data)
+        entities = new Object[entityCount]
+        List<String> names = new ArrayList<>(entityCount)
+        Map<Class, List<Object>> entitiesByClass = classes.collectEntries { [(it): []] }
+        for (int i = 0; i < entityCount; i++) {
+            Class type = classes[readVarInt(data)]
+            entities[i] = instantiate(type)
+            entitiesByClass[type] << entities[i]
+            names << readStringReference(data)
+        }
+
+        pendingFills = []
+        classes.each { type ->
+            fieldsByClass[type].each { Field field ->
+                entitiesByClass[type].each { field.set(it, readValue(data, field.get(it))) }
+            }
+        }
+        pendingFills*.call()
+        pendingFills = null
+        LOG.debug("read {} entities of {} classes", entityCount, classes.size())
+
+        entities.eachWithIndex { entity, index ->
+            listeners.each { it.onEntityCreated(names[index], entity) }
+        }
+        return entityCount
+    }
+
+    private static void readHeader(DataInput input) {
+        if (input.readInt() != MAGIC) {
+            throw new IOException('not a binary fixture')
+        }
+        int version = readVarInt(input)
+        if (version != VERSION) {
+            throw new IOException("unsupported binary fixture version $version, expected $VERSION")
+        }
+    }
+
+    private void readClassTable(DataInput input, List<Class> classes, Map<Class, List<Field>> fieldsByClass) {
+        int classCount = readVarInt(input)
+        classCount.times {
+            Class type = loadClass(readStringReference(input))
+            List<String> fieldNames = []
+            readVarInt(input).times { fieldNames << readStringReference(input) }
+            List<Field> fields = persistentFieldsOf(type)
+            if (fields*.name != fieldNames) {
+                throw new IOException("the fields of $type have changed since the binary fixture was written, " +
+                        "expected $fieldNames but found ${fields*.name}")
+            }
+            classes << type
+            fieldsByClass[type] = fields
+        }
+    }
+
+    private Object readValue(DataInput input, Object currentValue = null) {
+        int tag = readVarInt(input)
+        switch (tag) {
+            case NULL: return null
+            case ENTITY_REFERENCE: return entities[readVarInt(input)]
+            case STRING: return readStringReference(input)
+            case BOOLEAN_TRUE: return Boolean.TRUE
+            case BOOLEAN_FALSE: return Boolean.FALSE
+            case BYTE: return input.readByte()
+            case SHORT: return input.readShort()
+            case INTEGER: return input.readInt()
+            case LONG: return input.readLong()
+            case FLOAT: return input.readFloat()
+            case DOUBLE: return input.readDouble()
+            case CHARACTER: return input.readChar()
+            case BIG_INTEGER: return new BigInteger(readStringReference(input))
+            case BIG_DECIMAL: return new BigDecimal(readStringReference(input))
+            case DATE: return readDate(input)
+            case CALENDAR: return readCalendar(input)
+            case ENUM: return Enum.valueOf(loadClass(readStringReference(input)), readStringReference(input))
+            case BYTE_ARRAY: return readByteArray(input)
+            case COLLECTION: return readCollection(input, currentValue)
+            case MAP: return readMap(input, currentValue)
+            case PARSED_VALUE: return readParsedValue(input)
+            case OBJECT: return readObject(input)
+            default: throw new IOException("unknown value tag $tag in binary fixture")
+        }
+    }
+
+    private Date readDate(DataInput input) {
+        Class type = loadClass(readStringReference(input))
+        Date date = (Date) type.getConstructor(long).newInstance(input.readLong())
+        if (date instanceof Timestamp) {
+            date.nanos = input.readInt()
+        }
+        return date
+    }
+
+    private Calendar readCalendar(DataInput input) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(readStringReference(input)))
+        calendar.timeInMillis = input.readLong()
+        return calendar
+    }
+
+    private static byte[] readByteArray(DataInput input) {
+        byte[] bytes = new byte[readVarInt(input)]
+        input.readFully(bytes)
+        return bytes
+    }
+
+    private Collection readCollection(DataInput input, Object currentValue) {
+        Class type = loadClass(readStringReference(input))
+        Collection collection = (Collection) reuseOrInstantiate(type, currentValue)
+        if (collection == null) {
+            collection = defaultCollectionFor(type)
+        }
+        List elements = []
+        readVarInt(input).times { elements << readValue(input) }
+        pendingFills << { collection.addAll(elements) }
+        return collection
+    }
+
+    private static Collection defaultCollectionFor(Class type) {
+        if (SortedSet.isAssignableFrom(type)) {
+            return new TreeSet()
+        }
+        if (Set.isAssignableFrom(type)) {
+            return new LinkedHashSet()
+        }
+        return new ArrayList()
+    }
+
+    private Map readMap(DataInput input, Object currentValue) {
+        Class type = loadClass(readStringReference(input))
+        Map map = (Map) reuseOrInstantiate(type, currentValue)
+        if (map == null) {
+            map = SortedMap.isAssignableFrom(type) ? new TreeMap() : new LinkedHashMap()
+        }
+        List keys = []
+        List values = []
+        readVarInt(input).times {
+            keys << readValue(input)
+            values << readValue(input)
+        }
+        pendingFills << { keys.eachWithIndex { key, i -> map.put(key, values[i]) } }
+        return map
+    }
+
+    private Object readParsedValue(DataInput input) {
+        Class type = loadClass(readStringReference(input))
+        String value = readStringReference(input)
+        Method parseMethod = findParseMethod(type)
+        if (parseMethod == null) {
+            throw new IOException("$type cannot be parsed from binary fixture value '$value'")
+        }
+        return parseMethod.invoke(null, value)
+    }
+
+    private Object readObject(DataInput input) {
+        Class type = loadClass(readStringReference(input))
+        Object object = instantiate(type)
+        Map<String, Field> fields = persistentFieldsOf(type).collectEntries { [(it.name): it] }
+        readVarInt(input).times {
+            String fieldName = readStringReference(input)
+            Field field = fields[fieldName]
+            if (field == null) {
+                throw new IOException("$type has no field $fieldName stored in the binary fixture")
+            }
+            field.set(object, readValue(input, field.get(object)))
+        }
+        return object
+    }
+
+    private static Object reuseOrInstantiate(Class type, Object currentValue) {
+        if (currentValue != null && currentValue.getClass() == type) {
+            currentValue.clear()
+            return currentValue
+        }
+        return instantiateOrNull(type)
+    }
+
+    private static Object instantiate(Class type) {
+        Object instance = instantiateOrNull(type)
+        if (instance == null) {
+            throw new IOException("$type cannot be read from a binary fixture as it has no no-arg constructor")
+        }
+        return instance
+    }
+
+    private static Object instantiateOrNull(Class type) {
+        Constructor constructor = type.declaredConstructors.find { it.parameterTypes.length == 0 }
+        if (constructor == null) {
+            return null
+        }
+        try {
+            constructor.accessible = true
+            return constructor.newInstance()
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            return null
+        }
+    }
+
+    private Class loadClass(String name) {
+        return Class.forName(name, true, classLoader)
+    }
+
+    private String readStringReference(DataInput input) {
+        return strings[readVarInt(input)]
+    }
+
+    private static String readString(DataInput input) {
+        byte[] bytes = new byte[readVarInt(input)]
+        input.readFully(bytes)
+        return new String(bytes, 'UTF-8')
+    }
+}
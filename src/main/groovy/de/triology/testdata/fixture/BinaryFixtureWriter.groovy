@@ -0,0 +1,268 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.fixture
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import de.triology.testdata.builder.EntitiesScriptExecutor
+import de.triology.testdata.builder.EntityBuilderListener
+import de.triology.testdata.util.DefinitionSources
+
+import java.lang.reflect.Field
+import java.sql.Timestamp
+
+import static de.triology.testdata.fixture.BinaryFixtureFormat.*
+
+/**
+ * Writes the entities created by an {@link EntitiesScriptExecutor}, together with their names, in a compact binary
+ * format that can be loaded by a {@link BinaryFixtureReader} without executing the entity definition scripts again.
+ * The format is described in {@link BinaryFixtureFormat}.<br>
+ * <br>
+ * Add the writer as {@link EntityBuilderListener} to an {@code EntitiesScriptExecutor} or use
+ * {@link #export(Collection, OutputStream)}. References between created entities are stored as references, all
+ * other objects are stored by value. Besides primitive wrappers, strings, numbers, dates, enums, byte arrays,
+ * collections and maps, values can be of any type with a no-arg constructor or of a JDK type that can be parsed from
+ * its {@code toString()} representation, like the {@code java.time} types.
+ */
+class BinaryFixtureWriter implements EntityBuilderListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BinaryFixtureWriter)
+
+    private List<Object> entities = []
+    private List<String> names = []
+    private Map<Object, Integer> entityIds = new IdentityHashMap<>()
+
+    private Map<String, Integer> stringIds
+    private List<String> strings
+
+    @Override
+    void onEntityCreated(String name, Object entity) {
+        entityIds[entity] = entities.size()
+        entities << entity
+        names << name
+    }
+
+    /**
+     * Executes the passed entity definition files and writes the created entities to the passed stream.
+     *
+     * @param entityDefinitionFiles names of entity definition files, directories or glob patterns, see
+     * {@link DefinitionSources}
+     * @param out the stream to write to, it is not closed
+     */
+    static void export(Collection<String> entityDefinitionFiles, OutputStream out) {
+        BinaryFixtureWriter writer = new BinaryFixtureWriter()
+        EntitiesScriptExecutor executor = new EntitiesScriptExecutor().addEntityBuilderListener(writer)
+        DefinitionSources.expand(entityDefinitionFiles).each { executor.execute(DefinitionSources.load(it)) }
+        writer.write(out)
+    }
+
+    /**
+     * Exports entity definition files to a binary fixture file, e. g. as part of a build.
+     *
+     * @param args the name of the binary fixture file to write, followed by the names of the entity definition files
+     */
+    static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println('usage: BinaryFixtureWriter <fixture file> <entity definition files...>')
+            System.exit(1)
+        }
+        new File(args[0]).withOutputStream { export(args.drop(1) as List, it) }
+    }
+
+    /**
+     * Writes all entities created so far to the passed stream.
+     *
+     * @param out the stream to write to, it is not closed
+     */
+    void write(OutputStream out) {
+        stringIds = [:]
+        strings = []
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream()
+        DataOutputStream body = new DataOutputStream(bodyBytes)
+
+        Map<Class, List<Object>> entitiesByClass = [:]
+        entities.each { entitiesByClass.get(it.getClass(), []) << it }
+        List<Class> classes = entitiesByClass.keySet() as List
+        Map<Class, List<Field>> fieldsByClass = classes.collectEntries { [(it): persistentFieldsOf(it)] }
+
+        writeClassTable(body, classes, fieldsByClass)
+        writeEntityTable(body, classes)
+        classes.each { type ->
+            fieldsByClass[type].each { Field field ->
+                entitiesByClass[type].each { writeValue(body, field.get(it)) }
+            }
+        }
+        body.flush()
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(out))
+        output.writeInt(MAGIC)
+        writeVarInt(output, VERSION)
+        writeVarInt(output, strings.size())
+        strings.each { writeString(output, it) }
+        bodyBytes.writeTo(output)
+        output.flush()
+        LOG.debug("wrote {} entities of {} classes", entities.size(), classes.size())
+    }
+
+    private void writeClassTable(DataOutput out, List<Class> classes, Map<Class, List<Field>> fieldsByClass) {
+        writeVarInt(out, classes.size())
+        classes.each { type ->
+            writeStringReference(out, type.name)
+            writeVarInt(out, fieldsByClass[type].size())
+            fieldsByClass[type].each { writeStringReference(out, it.name) }
+        }
+    }
+
+    private void writeEntityTable(DataOutput out, List<Class> classes) {
+        writeVarInt(out, entities.size())
+        entities.eachWithIndex { entity, index ->
+            writeVarInt(out, classes.indexOf(entity.getClass()))
+            writeStringReference(out, names[index])
+        }
+    }
+
+    private void writeValue(DataOutput out, Object value) {
+        if (value == null) {
+            writeVarInt(out, NULL)
+        } else if (entityIds.containsKey(value)) {
+            writeVarInt(out, ENTITY_REFERENCE)
+            writeVarInt(out, entityIds[value])
+        } else if (value instanceof String) {
+            writeVarInt(out, STRING)
+            writeStringReference(out, value)
+        } else if (value instanceof Boolean) {
+            writeVarInt(out, value ? BOOLEAN_TRUE : BOOLEAN_FALSE)
+        } else if (value instanceof Byte) {
+            writeVarInt(out, BYTE)
+            out.writeByte(value)
+        } else if (value instanceof Short) {
+            writeVarInt(out, SHORT)
+            out.writeShort(value)
+        } else if (value instanceof Integer) {
+            writeVarInt(out, INTEGER)
+            out.writeInt(value)
+        } else if (value instanceof Long) {
+            writeVarInt(out, LONG)
+            out.writeLong(value)
+        } else if (value instanceof Float) {
+            writeVarInt(out, FLOAT)
+            out.writeFloat(value)
+        } else if (value instanceof Double) {
+            writeVarInt(out, DOUBLE)
+            out.writeDouble(value)
+        } else if (value instanceof Character) {
+            writeVarInt(out, CHARACTER)
+            out.writeChar(value as int)
+        } else if (value instanceof BigInteger) {
+            writeVarInt(out, BIG_INTEGER)
+            writeStringReference(out, value.toString())
+        } else if (value instanceof BigDecimal) {
+            writeVarInt(out, BIG_DECIMAL)
+            writeStringReference(out, value.toString())
+        } else if (value instanceof Date) {
+            writeDate(out, value)
+        } else if (value instanceof Calendar) {
+            writeVarInt(out, CALENDAR)
+            writeStringReference(out, value.timeZone.ID)
+            out.writeLong(value.timeInMillis)
+        } else if (value instanceof Enum) {
+            writeVarInt(out, ENUM)
+            writeStringReference(out, value.declaringClass.name)
+            writeStringReference(out, value.name())
+        } else if (value instanceof byte[]) {
+            writeVarInt(out, BYTE_ARRAY)
+            writeVarInt(out, value.length)
+            out.write(value)
+        } else if (value instanceof Collection) {
+            writeVarInt(out, COLLECTION)
+            writeStringReference(out, value.getClass().name)
+            writeVarInt(out, value.size())
+            value.each { writeValue(out, it) }
+        } else if (value instanceof Map) {
+            writeVarInt(out, MAP)
+            writeStringReference(out, value.getClass().name)
+            writeVarInt(out, value.size())
+            value.each { key, mapValue ->
+                writeValue(out, key)
+                writeValue(out, mapValue)
+            }
+        } else if (isParseable(value.getClass())) {
+            writeVarInt(out, PARSED_VALUE)
+            writeStringReference(out, value.getClass().name)
+            writeStringReference(out, value.toString())
+        } else if (hasNoArgConstructor(value.getClass())) {
+            writeObject(out, value)
+        } else {
+            throw new IllegalArgumentException("cannot store value of ${value.getClass()} in a binary fixture: $value")
+        }
+    }
+
+    private void writeDate(DataOutput out, Date value) {
+        writeVarInt(out, DATE)
+        writeStringReference(out, value.getClass().name)
+        out.writeLong(value.time)
+        if (value instanceof Timestamp) {
+            out.writeInt(value.nanos)
+        }
+    }
+
+    private void writeObject(DataOutput out, Object value) {
+        List<Field> fields = persistentFieldsOf(value.getClass())
+        writeVarInt(out, OBJECT)
+        writeStringReference(out, value.getClass().name)
+        writeVarInt(out, fields.size())
+        fields.each {
+            writeStringReference(out, it.name)
+            writeValue(out, it.get(value))
+        }
+    }
+
+    private static boolean isParseable(Class type) {
+        if (!type.name.startsWith('java.')) {
+            return false
+        }
+        return findParseMethod(type) != null
+    }
+
+    private static boolean hasNoArgConstructor(Class type) {
+        return !type.name.startsWith('java.') && type.declaredConstructors.any { it.parameterTypes.length == 0 }
+    }
+
+    private void writeStringReference(DataOutput out, String value) {
+        Integer id = stringIds[value]
+        if (id == null) {
+            id = strings.size()
+            stringIds[value] = id
+            strings << value
+        }
+        writeVarInt(out, id)
+    }
+
+    private static void writeString(DataOutput out, String value) {
+        byte[] bytes = value.getBytes('UTF-8')
+        writeVarInt(out, bytes.length)
+        out.write(bytes)
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import groovy.transform.PackageScope
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import de.triology.testdata.builder.EntitiesScriptExecutor
+import de.triology.testdata.builder.EntityBuilderListener
+
+import javax.persistence.EntityManager
+
+/**
+ * An {@link EntityBuilderListener} that persists created entities and commits the current transaction after every
+ * {@code commitInterval} entities, recording a {@link LoadCheckpoint} for each commit. Commits only take place when
+ * a top level entity is completed, so that no committed entity references an entity that has not been persisted yet.
+ * <br>
+ * When resuming from a checkpoint, all entities created up to and including the checkpoint's entity are not
+ * persisted again. Instead, the committed entities are looked up in the database by their IDs, which therefore have
+ * to be assigned in the entity definition files. Associations of the entities persisted after the checkpoint that
+ * refer to such entities are changed to refer to the managed instances looked up instead.<br>
+ * <br>
+ * The listeners passed to the constructor are notified after each entity has been persisted or looked up, with the
+ * managed instance of the entity.
+ */
+@PackageScope
+class CheckpointingEntityPersister implements EntityBuilderListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointingEntityPersister)
+
+    private EntityManager entityManager
+    private EntitiesScriptExecutor scriptExecutor
+    private EntityPersister persister
+    private List<EntityBuilderListener> listeners
+    private int commitInterval
+    private boolean detachCommittedEntities
+    private LoadCheckpoint resumeFrom
+    private LoadCheckpoint lastCheckpoint
+    private LoadCheckpoint lastPersisted
+
+    private String currentFile
+    private boolean resumeFileReached
+    private int entityOrdinal
+    private int uncommittedEntities
+    private List<Object> entitiesOfChunk = []
+    private EntityDependencies dependencies
+    private IdentityHashMap<Object, Object> committedEntities = new IdentityHashMap<>()
+
+    /**
+     * @param entityManager the EntityManager to persist entities with, its transaction is expected to be active
+     * @param scriptExecutor the executor notifying this persister, used to detect the completion of top level entities
+     * @param commitInterval the number of entities after which the transaction is committed
+     * @param resumeFrom the checkpoint to resume from or null to persist all entities
+     * @param detachCommittedEntities whether to detach the entities of each chunk from the EntityManager after they
+     * have been committed, which keeps the persistence context small
+     * @param listeners the listeners to notify about each persisted or looked up entity
+     */
+    CheckpointingEntityPersister(EntityManager entityManager, EntitiesScriptExecutor scriptExecutor, int commitInterval,
+                                 LoadCheckpoint resumeFrom, boolean detachCommittedEntities,
+                                 List<EntityBuilderListener> listeners) {
+        this.entityManager = entityManager
+        this.scriptExecutor = scriptExecutor
+        this.persister = new EntityPersister(entityManager)
+        this.commitInterval = commitInterval
+        this.resumeFrom = resumeFrom
+        this.detachCommittedEntities = detachCommittedEntities
+        this.listeners = listeners
+        this.lastCheckpoint = resumeFrom
+        this.resumeFileReached = resumeFrom == null
+        this.dependencies = new EntityDependencies(entityManager.getMetamodel())
+    }
+
+    /**
+     * Has to be called before the entities of the next entity definition file are created.
+     *
+     * @param fileName the name of the entity definition file
+     */
+    void startFile(String fileName) {
+        currentFile = fileName
+        entityOrdinal = 0
+        if (!resumeFileReached && fileName == resumeFrom.fileName) {
+            resumeFileReached = true
+        }
+    }
+
+    @Override
+    void onEntityCreated(String name, Object entity) {
+        entityOrdinal++
+        if (isAlreadyCommitted(name)) {
+            Object committed = findCommittedEntity(name, entity)
+            committedEntities[entity] = committed
+            notifyListeners(name, committed)
+            return
+        }
+
+        if (!committedEntities.isEmpty()) {
+            dependencies.replaceAssociatedEntities(entity, committedEntities)
+        }
+        persister.onEntityCreated(name, entity)
+        notifyListeners(name, entity)
+        lastPersisted = new LoadCheckpoint(currentFile, entityOrdinal, name)
+        uncommittedEntities++
+        if (uncommittedEntities >= commitInterval && !scriptExecutor.entityUnderConstruction) {
+            commit()
+            entityManager.getTransaction().begin()
+        }
+    }
+
+    private void notifyListeners(String name, Object entity) {
+        entitiesOfChunk << entity
+        listeners.each { it.onEntityCreated(name, entity) }
+    }
+
+    private Object findCommittedEntity(String name, Object entity) {
+        Object id = entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(entity)
+        if (id == null) {
+            throw new IllegalStateException("cannot resume from $resumeFrom, the entity '$name' created before the " +
+                    'checkpoint has no ID. Resuming requires IDs to be assigned in the entity definition files.')
+        }
+        Object committed = entityManager.find(entity.getClass(), id)
+        if (committed == null) {
+            throw new IllegalStateException("cannot resume from $resumeFrom, the entity '$name' created before the " +
+                    "checkpoint has not been found in the database by its ID $id")
+        }
+        return committed
+    }
+
+    private boolean isAlreadyCommitted(String name) {
+        if (!resumeFileReached) {
+            return true
+        }
+        if (resumeFrom == null || currentFile != resumeFrom.fileName || entityOrdinal > resumeFrom.entityOrdinal) {
+            return false
+        }
+        if (entityOrdinal == resumeFrom.entityOrdinal && name != resumeFrom.entityName) {
+            throw new IllegalStateException("cannot resume from $resumeFrom, the entity created at that position is " +
+                    "named '$name'. Has the entity definition file been changed?")
+        }
+        return true
+    }
+
+    /**
+     * Commits all entities persisted since the last checkpoint. Leaves the transaction inactive.
+     */
+    void finish() {
+        commit()
+    }
+
+    private void commit() {
+        entityManager.getTransaction().commit()
+        if (detachCommittedEntities) {
+            entitiesOfChunk.each {
+                if (entityManager.contains(it)) {
+                    entityManager.detach(it)
+                }
+            }
+        }
+        entitiesOfChunk.clear()
+        if (uncommittedEntities > 0) {
+            lastCheckpoint = lastPersisted
+            LOG.debug("committed {} entities, checkpoint is {}", uncommittedEntities, lastCheckpoint)
+        }
+        uncommittedEntities = 0
+    }
+
+    /**
+     * @return the {@link LoadCheckpoint} of the last committed entity or null if nothing has been committed yet
+     */
+    LoadCheckpoint getLastCheckpoint() {
+        return lastCheckpoint
+    }
+}
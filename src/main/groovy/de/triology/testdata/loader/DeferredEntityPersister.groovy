@@ -0,0 +1,83 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import groovy.transform.PackageScope
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import de.triology.testdata.builder.EntityBuilderListener
+
+import javax.persistence.EntityManager
+
+/**
+ * An {@link EntityBuilderListener} that collects created entities instead of persisting them right away. Calling
+ * {@link #persistAll()} persists the collected entities ordered by an {@link InsertPlan}, so that each entity is
+ * inserted after the entities it references and no follow-up UPDATEs are necessary.<br>
+ * <br>
+ * The {@code persistListener} is notified of each entity in the order the entities are persisted.
+ */
+@PackageScope
+class DeferredEntityPersister implements EntityBuilderListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeferredEntityPersister)
+
+    private EntityManager entityManager
+    private EntityDependencies dependencies
+    private EntityBuilderListener persistListener
+    private List<Object> entities = []
+    private Map<Object, String> names = new IdentityHashMap<>()
+
+    DeferredEntityPersister(EntityManager entityManager, EntityDependencies dependencies,
+                            EntityBuilderListener persistListener) {
+        this.entityManager = entityManager
+        this.dependencies = dependencies
+        this.persistListener = persistListener
+    }
+
+    @Override
+    public void onEntityCreated(String name, Object entity) {
+        entities << entity
+        names[entity] = name
+    }
+
+    /**
+     * Persists all entities collected so far in dependency order.
+     *
+     * @return the names of the entities forming reference cycles. Those entities are persisted in creation order.
+     */
+    List<List<String>> persistAll() {
+        InsertPlan plan = new InsertPlan(entities, dependencies)
+        List<List<String>> cycles = plan.cycles.collect { cycle -> cycle.collect { names[it] } }
+        cycles.each { LOG.warn("entities reference each other in a cycle and cannot be ordered for insertion: {}", it) }
+
+        plan.orderedEntities.each { entity ->
+            entityManager.persist(entity)
+            persistListener?.onEntityCreated(names[entity], entity)
+        }
+        entities.clear()
+        names.clear()
+        return cycles
+    }
+}
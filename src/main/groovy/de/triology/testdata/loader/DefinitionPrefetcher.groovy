@@ -0,0 +1,119 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import groovy.transform.PackageScope
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import de.triology.testdata.builder.EntitiesScriptExecutor
+import de.triology.testdata.util.DefinitionSources
+
+import javax.persistence.EntityManagerFactory
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.FutureTask
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Runs prefetches and background loads on a shared pool of daemon threads, so that they never prevent the JVM from
+ * exiting.<br>
+ * <br>
+ * A prefetch resolves entity definition files and compiles them into the script class cache shared by all
+ * {@link EntitiesScriptExecutor}s. Files are compiled in parallel. The thread running a prefetch compiles files that
+ * no other thread has started yet itself, so prefetches always make progress even if all threads are busy.
+ */
+@PackageScope
+class DefinitionPrefetcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefinitionPrefetcher)
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory())
+
+    private DefinitionPrefetcher() {}
+
+    /**
+     * Starts resolving and compiling the passed entity definition files and initializing the metamodel of the passed
+     * factory, if any.
+     *
+     * @param entityDefinitionFiles names of files, directories or glob patterns, see {@link DefinitionSources}
+     * @param entityManagerFactory the factory whose metamodel to initialize or null
+     * @return a future of the names of the compiled files
+     */
+    static Future<List<String>> prefetch(Collection<String> entityDefinitionFiles,
+                                         EntityManagerFactory entityManagerFactory) {
+        List<String> files = new ArrayList<>(entityDefinitionFiles)
+        return submit({
+            long start = System.nanoTime()
+            entityManagerFactory?.getMetamodel()?.getEntities()
+            List<String> definitionFiles = DefinitionSources.expand(files)
+            List<FutureTask> compilations = definitionFiles.collect { String file ->
+                FutureTask compilation = new FutureTask({
+                    EntitiesScriptExecutor.compile(DefinitionSources.load(file))
+                } as Callable)
+                executor.execute(compilation)
+                return compilation
+            }
+            compilations.each { FutureTask compilation ->
+                compilation.run()
+                try {
+                    compilation.get()
+                } catch (ExecutionException e) {
+                    throw e.cause
+                }
+            }
+            LOG.debug("prefetched {} entity definition files in {} ms", definitionFiles.size(),
+                    (System.nanoTime() - start).intdiv(1000000L))
+            return definitionFiles
+        } as Callable<List<String>>)
+    }
+
+    /**
+     * @param task the task to run on a daemon thread
+     * @return the future of the task
+     */
+    static <T> Future<T> submit(Callable<T> task) {
+        // a closure is both Callable and Runnable, so ExecutorService.submit would dispatch to submit(Runnable)
+        FutureTask<T> future = new FutureTask<T>(task)
+        executor.execute(future)
+        return future
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadCount = new AtomicInteger()
+
+        @Override
+        Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "test-data-loader-prefetch-${threadCount.incrementAndGet()}")
+            thread.daemon = true
+            return thread
+        }
+    }
+}
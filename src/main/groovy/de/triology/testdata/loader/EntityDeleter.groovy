@@ -30,6 +30,12 @@ import org.slf4j.LoggerFactory
 import de.triology.testdata.builder.EntityBuilderListener
 
 import javax.persistence.EntityManager
+import javax.persistence.EntityManagerFactory
+import javax.persistence.PersistenceUnitUtil
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 /**
  * If added as {@link EntityCreatedListener} during entity creation, the EntityDeleter keeps track of created entities
@@ -62,7 +68,17 @@ class EntityDeleter implements EntityBuilderListener {
      * Deletes all previously created entities from the database using the instance's EntityManager.
      */
     protected deleteAllEntities() {
-        while(!entities.empty()) {
+        deleteEntitiesCreatedAfter(0)
+    }
+
+    /**
+     * Deletes all entities that have been created after the first {@code count} entities from the database using the
+     * instance's EntityManager, in reverse creation order.
+     *
+     * @param count the number of entities to keep
+     */
+    protected void deleteEntitiesCreatedAfter(int count) {
+        while(entities.size() > count) {
             def entity = prepareNextEntityForDeletion()
             if(entity) {
                 entityManager.remove(entity)
@@ -70,6 +86,138 @@ class EntityDeleter implements EntityBuilderListener {
         }
     }
 
+    /**
+     * @return the number of entities that have been created and not yet deleted
+     */
+    protected int getEntityCount() {
+        return entities.size()
+    }
+
+    /**
+     * Deletes all previously created entities from the database, partitioned into groups of entities that are
+     * associated with each other. Entities of different groups do not reference each other, so the groups are deleted
+     * concurrently, each with its own EntityManager and RESOURCE_LOCAL transaction. Within a group, entities are
+     * deleted in reverse creation order.<br>
+     * <br>
+     * Deleted entities are detached from the instance's EntityManager, which must not have an active transaction. Only
+     * the entities of groups that were deleted successfully stop being tracked. All others, including all entities if
+     * the deletion fails before any group is deleted, remain tracked, so that calling this method again retries them.
+     *
+     * @param entityManagerFactory the factory to create an EntityManager for each group with
+     * @throws IllegalStateException if deleting any of the groups fails, after all other groups have been deleted
+     */
+    protected void deleteAllEntitiesInParallel(EntityManagerFactory entityManagerFactory) {
+        List<Object> entitiesInDeletionOrder = new ArrayList<Object>(entities).reverse()
+        List<List<Object>> groups = partitionIntoIndependentGroups(entitiesInDeletionOrder,
+                new EntityDependencies(entityManagerFactory.getMetamodel()))
+        if (groups.isEmpty()) {
+            return
+        }
+        LOG.debug("deleting {} entities in {} independent groups", entitiesInDeletionOrder.size(), groups.size())
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(groups.size(), Runtime.getRuntime().availableProcessors()))
+        List<Throwable> failures
+        try {
+            List<Future> results = groups.collect { group ->
+                executor.submit({ deleteGroup(entityManagerFactory, group) } as Runnable)
+            }
+            failures = results.collect { failureOf(it) }
+        } finally {
+            executor.shutdown()
+        }
+
+        Set<Object> deletedEntities = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>())
+        groups.eachWithIndex { group, i ->
+            if (failures[i] == null) {
+                deletedEntities.addAll(group)
+            }
+        }
+        entities.removeAll { deletedEntities.contains(it) }
+        deletedEntities.each {
+            if (entityManager.contains(it)) {
+                entityManager.detach(it)
+            }
+        }
+        throwIfAnyGroupFailed(failures.findAll { it != null }, groups.size())
+    }
+
+    private static List<List<Object>> partitionIntoIndependentGroups(List<Object> entities,
+                                                                     EntityDependencies dependencies) {
+        Map<Object, Object> parents = new IdentityHashMap<>()
+        entities.each { parents[it] = it }
+        Closure<Object> root
+        root = { Object entity ->
+            Object parent = parents[entity]
+            if (parent.is(entity)) {
+                return entity
+            }
+            Object entityRoot = root(parent)
+            parents[entity] = entityRoot
+            return entityRoot
+        }
+        entities.each { entity ->
+            dependencies.getAssociatedEntities(entity).each { associated ->
+                if (parents.containsKey(associated)) {
+                    parents[root(associated)] = root(entity)
+                }
+            }
+        }
+
+        Map<Object, List<Object>> groupsByRoot = new IdentityHashMap<>()
+        entities.each {
+            Object entityRoot = root(it)
+            if (!groupsByRoot.containsKey(entityRoot)) {
+                groupsByRoot[entityRoot] = []
+            }
+            groupsByRoot[entityRoot] << it
+        }
+        return groupsByRoot.values() as List
+    }
+
+    private static void deleteGroup(EntityManagerFactory entityManagerFactory, List<Object> group) {
+        PersistenceUnitUtil persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil()
+        EntityManager groupEntityManager = entityManagerFactory.createEntityManager()
+        try {
+            groupEntityManager.getTransaction().begin()
+            group.each { entity ->
+                def id = persistenceUnitUtil.getIdentifier(entity)
+                def managed = id != null ? groupEntityManager.find(entity.getClass(), id) : null
+                if (managed) {
+                    groupEntityManager.remove(managed)
+                } else {
+                    LOG.debug("entity {} not found, assuming it to be already removed", entity)
+                }
+            }
+            groupEntityManager.getTransaction().commit()
+        } catch (Exception e) {
+            if (groupEntityManager.getTransaction().isActive()) {
+                groupEntityManager.getTransaction().rollback()
+            }
+            throw e
+        } finally {
+            groupEntityManager.close()
+        }
+    }
+
+    private static Throwable failureOf(Future result) {
+        try {
+            result.get()
+            return null
+        } catch (ExecutionException e) {
+            return e.cause
+        }
+    }
+
+    private static void throwIfAnyGroupFailed(List<Throwable> failures, int groupCount) {
+        if (failures) {
+            IllegalStateException exception = new IllegalStateException(
+                    "deleting ${failures.size()} of ${groupCount} entity groups failed", failures.first())
+            failures.tail().each { exception.addSuppressed(it) }
+            throw exception
+        }
+    }
+
     private prepareNextEntityForDeletion() {
         def entity = entities.pop()
         try {
@@ -82,8 +230,18 @@ class EntityDeleter implements EntityBuilderListener {
 
     private mergeNextEntityIfNotAttached(Object entity) {
         if(!entityManager.contains(entity)) {
+            Object id = identifierOf(entity)
+            if (id != null) {
+                // unlike merge, find does not follow the entity's references to entities that are already removed
+                return entityManager.find(entity.getClass(), id)
+            }
             return entityManager.merge(entity)
         }
         return entity
     }
+
+    private Object identifierOf(Object entity) {
+        PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory()?.getPersistenceUnitUtil()
+        return persistenceUnitUtil?.getIdentifier(entity)
+    }
 }
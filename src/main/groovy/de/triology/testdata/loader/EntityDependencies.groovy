@@ -0,0 +1,174 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import groovy.transform.PackageScope
+
+import javax.persistence.OneToOne
+import javax.persistence.metamodel.Attribute
+import javax.persistence.metamodel.Metamodel
+import javax.persistence.metamodel.PluralAttribute
+import javax.persistence.metamodel.SingularAttribute
+import java.lang.reflect.AnnotatedElement
+import java.lang.reflect.Field
+import java.lang.reflect.Member
+import java.lang.reflect.Method
+
+/**
+ * Determines the entities an entity is associated with, based on the associations declared in the JPA
+ * {@link Metamodel}. Classes that are not managed by the persistence unit are treated as having no associations.
+ */
+@PackageScope
+class EntityDependencies {
+
+    private Metamodel metamodel
+    private Map<Class, List<Attribute>> associationsByClass = [:]
+
+    /**
+     * @param metamodel the {@link Metamodel} of the persistence unit, may be null in which case no entity has
+     * associations
+     */
+    EntityDependencies(Metamodel metamodel) {
+        this.metamodel = metamodel
+    }
+
+    /**
+     * Returns the entities that have to be inserted before the passed entity, i. e. the entities referenced by the
+     * passed entity's single valued associations that own a foreign key.
+     *
+     * @param entity the entity
+     * @return the referenced entities, never null
+     */
+    Collection<Object> getReferencedEntities(Object entity) {
+        return associationsOf(entity.getClass())
+                .findAll { it instanceof SingularAttribute && ownsForeignKey(it) }
+                .collect { valueOf(it, entity) }
+                .findAll { it != null }
+    }
+
+    /**
+     * Returns all entities associated with the passed entity, regardless of the direction and multiplicity of the
+     * association.
+     *
+     * @param entity the entity
+     * @return the associated entities, never null
+     */
+    Collection<Object> getAssociatedEntities(Object entity) {
+        return associationsOf(entity.getClass()).collectMany { Attribute attribute ->
+            def value = valueOf(attribute, entity)
+            if (value == null) {
+                return []
+            }
+            if (attribute instanceof PluralAttribute) {
+                return value instanceof Map ? value.values() : value as Collection
+            }
+            return [value]
+        }.findAll { it != null }
+    }
+
+    /**
+     * Replaces the entities associated with the passed entity that are keys of the passed map by the corresponding
+     * values, in single valued associations as well as in collections and maps.
+     *
+     * @param entity the entity whose associations to change
+     * @param replacements the entities to replace, compared by identity, and their replacements
+     */
+    void replaceAssociatedEntities(Object entity, IdentityHashMap<Object, Object> replacements) {
+        associationsOf(entity.getClass()).each { Attribute attribute ->
+            def value = valueOf(attribute, entity)
+            if (value == null) {
+                return
+            }
+            if (attribute instanceof SingularAttribute) {
+                if (replacements.containsKey(value)) {
+                    setValue(attribute, entity, replacements[value])
+                }
+            } else if (value instanceof Map) {
+                ((Map) value).entrySet().each { Map.Entry entry ->
+                    if (replacements.containsKey(entry.value)) {
+                        entry.value = replacements[entry.value]
+                    }
+                }
+            } else if (((Collection) value).any { replacements.containsKey(it) }) {
+                List elements = ((Collection) value).collect { replacements.containsKey(it) ? replacements[it] : it }
+                ((Collection) value).clear()
+                ((Collection) value).addAll(elements)
+            }
+        }
+    }
+
+    private List<Attribute> associationsOf(Class entityClass) {
+        if (!associationsByClass.containsKey(entityClass)) {
+            associationsByClass[entityClass] = findAssociations(entityClass)
+        }
+        return associationsByClass[entityClass]
+    }
+
+    private List<Attribute> findAssociations(Class entityClass) {
+        if (metamodel == null) {
+            return []
+        }
+        try {
+            return metamodel.managedType(entityClass).attributes.findAll { it.association } as List<Attribute>
+        } catch (IllegalArgumentException ignored) {
+            // not an entity, embeddable or mapped superclass
+            return []
+        }
+    }
+
+    private static boolean ownsForeignKey(Attribute attribute) {
+        Member member = attribute.javaMember
+        if (member instanceof AnnotatedElement) {
+            OneToOne oneToOne = ((AnnotatedElement) member).getAnnotation(OneToOne)
+            return !oneToOne?.mappedBy()
+        }
+        return true
+    }
+
+    private static Object valueOf(Attribute attribute, Object entity) {
+        Member member = attribute.javaMember
+        if (member instanceof Field) {
+            Field field = (Field) member
+            field.accessible = true
+            return field.get(entity)
+        }
+        if (member instanceof Method) {
+            Method method = (Method) member
+            method.accessible = true
+            return method.invoke(entity)
+        }
+        return entity."${attribute.name}"
+    }
+
+    private static void setValue(Attribute attribute, Object entity, Object value) {
+        Member member = attribute.javaMember
+        if (member instanceof Field) {
+            Field field = (Field) member
+            field.accessible = true
+            field.set(entity, value)
+        } else {
+            entity."${attribute.name}" = value
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import groovy.transform.PackageScope
+
+/**
+ * Orders entities so that each entity comes after all entities it references, based on {@link EntityDependencies}.
+ * Entities that can be inserted at the same time are grouped by their class, so inserts of the same type are
+ * consecutive and can be batched by the persistence provider.<br>
+ * <br>
+ * Entities that are part of or depend on a reference cycle cannot be ordered. They are appended in creation order and
+ * the cycles are made available via {@link #getCycles()}.
+ */
+@PackageScope
+class InsertPlan {
+
+    private List<Object> orderedEntities = []
+    private List<List<Object>> cycles = []
+
+    /**
+     * @param entities the entities to insert, in creation order
+     * @param dependencies {@link EntityDependencies} used to determine the references between the entities
+     */
+    InsertPlan(List<Object> entities, EntityDependencies dependencies) {
+        Map<Object, Set<Object>> dependenciesOf = new IdentityHashMap<>()
+        Map<Object, Set<Object>> dependentsOf = new IdentityHashMap<>()
+        entities.each {
+            dependenciesOf[it] = identitySet()
+            dependentsOf[it] = identitySet()
+        }
+        entities.each { entity ->
+            dependencies.getReferencedEntities(entity).each { referenced ->
+                if (!referenced.is(entity) && dependenciesOf.containsKey(referenced)) {
+                    dependenciesOf[entity] << referenced
+                    dependentsOf[referenced] << entity
+                }
+            }
+        }
+
+        orderByDependencies(entities, dependenciesOf, dependentsOf)
+    }
+
+    private void orderByDependencies(List<Object> entities, Map<Object, Set<Object>> dependenciesOf,
+                                     Map<Object, Set<Object>> dependentsOf) {
+        Map<Object, Integer> unresolved = new IdentityHashMap<>()
+        entities.each { unresolved[it] = dependenciesOf[it].size() }
+
+        List<Object> ready = entities.findAll { unresolved[it] == 0 }
+        while (!ready.isEmpty()) {
+            List<Object> level = groupByClass(ready)
+            orderedEntities.addAll(level)
+            ready = []
+            level.each { entity ->
+                dependentsOf[entity].each { dependent ->
+                    unresolved[dependent] = unresolved[dependent] - 1
+                    if (unresolved[dependent] == 0) {
+                        ready << dependent
+                    }
+                }
+            }
+        }
+
+        if (orderedEntities.size() < entities.size()) {
+            Set<Object> ordered = identitySet()
+            ordered.addAll(orderedEntities)
+            List<Object> remaining = entities.findAll { !ordered.contains(it) }
+            cycles = new CycleFinder(remaining, dependenciesOf).cycles
+            orderedEntities.addAll(remaining)
+        }
+    }
+
+    private static List<Object> groupByClass(List<Object> entities) {
+        Map<Class, List<Object>> byClass = [:]
+        entities.each { byClass.get(it.getClass(), []) << it }
+        return byClass.values().collectMany { it }
+    }
+
+    private static Set<Object> identitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>())
+    }
+
+    /**
+     * @return all entities, each one after the entities it references unless they are part of a cycle
+     */
+    List<Object> getOrderedEntities() {
+        return orderedEntities
+    }
+
+    /**
+     * @return the reference cycles among the entities, each as a list of the entities forming the cycle
+     */
+    List<List<Object>> getCycles() {
+        return cycles
+    }
+
+    /**
+     * Finds the strongly connected components with more than one entity (Tarjan's algorithm).
+     */
+    private static class CycleFinder {
+
+        private Map<Object, Set<Object>> dependenciesOf
+        private Map<Object, Integer> index = new IdentityHashMap<>()
+        private Map<Object, Integer> lowLink = new IdentityHashMap<>()
+        private Deque<Object> stack = new ArrayDeque<>()
+        private Set<Object> onStack = identitySet()
+        private int nextIndex = 0
+        List<List<Object>> cycles = []
+
+        CycleFinder(List<Object> entities, Map<Object, Set<Object>> dependenciesOf) {
+            this.dependenciesOf = dependenciesOf
+            entities.each {
+                if (!index.containsKey(it)) {
+                    visit(it)
+                }
+            }
+        }
+
+        private void visit(Object entity) {
+            index[entity] = nextIndex
+            lowLink[entity] = nextIndex
+            nextIndex++
+            stack.push(entity)
+            onStack << entity
+
+            dependenciesOf[entity].each { dependency ->
+                if (!index.containsKey(dependency)) {
+                    visit(dependency)
+                    lowLink[entity] = Math.min(lowLink[entity], lowLink[dependency])
+                } else if (onStack.contains(dependency)) {
+                    lowLink[entity] = Math.min(lowLink[entity], index[dependency])
+                }
+            }
+
+            if (lowLink[entity] == index[entity]) {
+                List<Object> component = []
+                Object member
+                while (true) {
+                    member = stack.pop()
+                    onStack.remove(member)
+                    component << member
+                    if (member.is(entity)) {
+                        break
+                    }
+                }
+                if (component.size() > 1) {
+                    cycles << component.reverse()
+                }
+            }
+        }
+    }
+}
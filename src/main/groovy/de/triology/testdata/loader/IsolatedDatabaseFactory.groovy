@@ -0,0 +1,55 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import javax.persistence.EntityManager
+import javax.persistence.EntityManagerFactory
+
+/**
+ * Creates the databases of a {@link TestDataLoaderPool}.
+ */
+interface IsolatedDatabaseFactory {
+
+    /**
+     * Is called for each database of the pool and again whenever a database has to be recreated. The database must be
+     * isolated from all other databases of this and other pools, e. g. an in-memory database or a schema of its own,
+     * and must have an empty schema when the returned factory is created.
+     *
+     * @param databaseName a name that is unique among the databases of all pools of all test JVMs, provided each JVM
+     * has its own fork number, see {@link TestDataLoaderPool#getForkNumber()}
+     * @return the {@link EntityManagerFactory} of the database
+     */
+    EntityManagerFactory createEntityManagerFactory(String databaseName)
+
+    /**
+     * Is called before a database is recreated and when the pool is closed, before the database's
+     * {@link EntityManagerFactory} is closed. A recreated database gets a new name, so the database must be dropped
+     * here to release its resources, e. g. {@code DROP ALL OBJECTS DELETE FILES} for H2 or {@code DROP SCHEMA}.
+     *
+     * @param databaseName the name the database was created with
+     * @param entityManager an {@link EntityManager} of the database without an active transaction
+     */
+    void dropDatabase(String databaseName, EntityManager entityManager)
+
+}
@@ -0,0 +1,65 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+/**
+ * Marks the last entity whose creation has been committed to the database during a chunked load started with
+ * {@link TestDataLoader#loadTestData(Collection, int)}. A checkpoint can be passed to
+ * {@link TestDataLoader#loadTestData(Collection, int, LoadCheckpoint)} to resume a failed load.
+ */
+class LoadCheckpoint {
+
+    private final String fileName
+    private final int entityOrdinal
+    private final String entityName
+
+    /**
+     * @param fileName the entity definition file containing the committed entity
+     * @param entityOrdinal the position of the committed entity within the order in which the entities of that file
+     * are created, starting at 1
+     * @param entityName the name of the committed entity
+     */
+    LoadCheckpoint(String fileName, int entityOrdinal, String entityName) {
+        this.fileName = fileName
+        this.entityOrdinal = entityOrdinal
+        this.entityName = entityName
+    }
+
+    String getFileName() {
+        return fileName
+    }
+
+    int getEntityOrdinal() {
+        return entityOrdinal
+    }
+
+    String getEntityName() {
+        return entityName
+    }
+
+    @Override
+    String toString() {
+        return "entity #$entityOrdinal ('$entityName') of file '$fileName'"
+    }
+}
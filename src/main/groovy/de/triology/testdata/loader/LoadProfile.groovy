@@ -0,0 +1,161 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.persistence.CacheRetrieveMode
+import javax.persistence.CacheStoreMode
+import javax.persistence.EntityManager
+import javax.persistence.FlushModeType
+
+/**
+ * Defines the flush mode and {@link EntityManager} properties the {@link TestDataLoader} applies to its EntityManager
+ * for the duration of a load. The previous settings are restored when the load is finished.<br>
+ * <br>
+ * JPA provides no means to remove a property from an EntityManager. Properties the EntityManager did not report
+ * before the load are therefore only reset if the JPA specification defines their default, like the cache modes.
+ * Other properties stay set after the load.<br>
+ * <br>
+ * Settings that persistence providers only support for a whole persistence unit, like JDBC batch writing, cannot be
+ * applied by a profile. See {@link #bulkInsertPersistenceUnitProperties(int)} for these.
+ */
+class LoadProfile {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadProfile)
+
+    private static final String CACHE_STORE_MODE = 'javax.persistence.cache.storeMode'
+    private static final Map<String, Object> SPECIFIED_DEFAULTS = [
+            (CACHE_STORE_MODE)                    : CacheStoreMode.USE,
+            'javax.persistence.cache.retrieveMode': CacheRetrieveMode.USE
+    ]
+
+    private String name
+    private FlushModeType flushMode
+    private Map<String, Object> properties = [:]
+
+    /**
+     * Creates an empty profile that does not change any settings.
+     *
+     * @param name the name of the profile, as shown in the {@link LoadReport}
+     */
+    LoadProfile(String name) {
+        this.name = name
+    }
+
+    /**
+     * Creates a profile for bulk inserts: flushing only on commit and bypassing the shared cache when storing
+     * entities.
+     *
+     * @return a new {@link LoadProfile}
+     */
+    static LoadProfile bulkInsert() {
+        return new LoadProfile('bulkInsert')
+                .flushMode(FlushModeType.COMMIT)
+                .property(CACHE_STORE_MODE, CacheStoreMode.BYPASS)
+    }
+
+    /**
+     * Returns the properties that enable JDBC batch writing for EclipseLink and Hibernate. Both providers only
+     * support batch writing for a whole persistence unit, so pass the properties when creating the
+     * {@link javax.persistence.EntityManagerFactory} used for loading test data, e. g. by
+     * {@code Persistence.createEntityManagerFactory(name, properties)}.
+     *
+     * @param batchSize the maximum number of statements per batch
+     * @return the persistence unit properties
+     */
+    static Map<String, String> bulkInsertPersistenceUnitProperties(int batchSize) {
+        return [
+                'eclipselink.jdbc.batch-writing'     : 'JDBC',
+                'eclipselink.jdbc.batch-writing.size': String.valueOf(batchSize),
+                'hibernate.jdbc.batch_size'          : String.valueOf(batchSize),
+                'hibernate.order_inserts'            : 'true'
+        ]
+    }
+
+    /**
+     * Sets the {@link FlushModeType} to use during a load.
+     *
+     * @param flushMode {@link FlushModeType}
+     * @return this profile
+     */
+    LoadProfile flushMode(FlushModeType flushMode) {
+        this.flushMode = flushMode
+        return this
+    }
+
+    /**
+     * Sets an EntityManager property to use during a load. Note that persistence providers silently ignore
+     * properties they do not support on the EntityManager level.
+     *
+     * @param propertyName the name of the property
+     * @param value the value to set during a load
+     * @return this profile
+     */
+    LoadProfile property(String propertyName, Object value) {
+        properties[propertyName] = value
+        return this
+    }
+
+    String getName() {
+        return name
+    }
+
+    /**
+     * Applies this profile to the passed EntityManager.
+     *
+     * @param entityManager {@link EntityManager}
+     * @return a Closure that restores the EntityManager's previous settings when called
+     */
+    protected Closure applyTo(EntityManager entityManager) {
+        FlushModeType previousFlushMode = entityManager.getFlushMode()
+        Map<String, Object> previousProperties = entityManager.getProperties() ?: [:]
+        Map<String, Object> restoredProperties = properties.keySet().findAll {
+            previousProperties.containsKey(it) || SPECIFIED_DEFAULTS.containsKey(it)
+        }.collectEntries { String propertyName ->
+            [(propertyName): previousProperties.containsKey(propertyName) ?
+                    previousProperties[propertyName] : SPECIFIED_DEFAULTS[propertyName]]
+        }
+
+        if (flushMode) {
+            entityManager.setFlushMode(flushMode)
+        }
+        properties.each { propertyName, value -> entityManager.setProperty(propertyName, value) }
+        LOG.debug("applied load profile {}", name)
+
+        return {
+            if (flushMode && previousFlushMode) {
+                entityManager.setFlushMode(previousFlushMode)
+            }
+            restoredProperties.each { propertyName, value -> entityManager.setProperty(propertyName, value) }
+            LOG.debug("restored settings changed by load profile {}", name)
+        }
+    }
+
+    @Override
+    String toString() {
+        return name
+    }
+}
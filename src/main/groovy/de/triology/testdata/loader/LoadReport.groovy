@@ -0,0 +1,97 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+/**
+ * Describes a call to one of the {@link TestDataLoader}'s {@code loadTestData} methods: the loaded files, the number of
+ * entities created, the {@link LoadProfile} in effect and the time the load took. Comparing the reports of loads with
+ * and without a profile shows the profile's effect.
+ */
+class LoadReport {
+
+    private final List<String> entityDefinitionFiles
+    private final int entityCount
+    private final LoadProfile loadProfile
+    private final long durationMillis
+    private final boolean successful
+    private final List<List<String>> dependencyCycles
+
+    LoadReport(Collection<String> entityDefinitionFiles, int entityCount, LoadProfile loadProfile, long durationMillis,
+               boolean successful, List<List<String>> dependencyCycles) {
+        this.entityDefinitionFiles = new ArrayList<String>(entityDefinitionFiles).asImmutable()
+        this.entityCount = entityCount
+        this.loadProfile = loadProfile
+        this.durationMillis = durationMillis
+        this.successful = successful
+        this.dependencyCycles = dependencyCycles.asImmutable()
+    }
+
+    List<String> getEntityDefinitionFiles() {
+        return entityDefinitionFiles
+    }
+
+    /**
+     * @return the number of entities created by the definition files, including entities that were not persisted
+     * because they had already been committed before resuming from a {@link LoadCheckpoint}
+     */
+    int getEntityCount() {
+        return entityCount
+    }
+
+    /**
+     * @return the {@link LoadProfile} applied during the load or null, if none was applied
+     */
+    LoadProfile getLoadProfile() {
+        return loadProfile
+    }
+
+    /**
+     * @return the time between starting to execute the first file and committing the last entities in milliseconds
+     */
+    long getDurationMillis() {
+        return durationMillis
+    }
+
+    /**
+     * @return false if loading was aborted by an exception
+     */
+    boolean isSuccessful() {
+        return successful
+    }
+
+    /**
+     * @return the names of the entities forming reference cycles that prevented ordering them for insertion. Only
+     * determined when loading with {@link TestDataLoader.PersistenceMode#DEFERRED}.
+     */
+    List<List<String>> getDependencyCycles() {
+        return dependencyCycles
+    }
+
+    @Override
+    String toString() {
+        return "${successful ? 'loaded' : 'failed loading'} $entityCount entities from $entityDefinitionFiles in " +
+                "${durationMillis}ms using load profile ${loadProfile ?: 'none'}" +
+                (dependencyCycles ? ", reference cycles: $dependencyCycles" : '')
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import groovy.transform.PackageScope
+
+import java.lang.reflect.Field
+import java.lang.reflect.Modifier
+
+/**
+ * In-memory index of loaded entities by their class, including all superclasses and interfaces, and by the values of
+ * their attributes. Attribute indexes are hash based and exist only for the combinations of class and attribute that
+ * were requested, either explicitly by {@link #createIndex(Class, String)} or on first use by
+ * {@link #find(Class, String, Object)}.<br>
+ * <br>
+ * Attribute values are read directly from the entities' fields, never through getters, and only for indexed
+ * attributes. An entity's value is recorded when the entity is added to an existing index, or when the index is
+ * created for an entity that was added before. Later changes to an entity, including IDs generated when it is
+ * persisted, are not reflected. Indexes survive {@link #clear()}, so they can be created once before loading. Entities
+ * that are added to an existing index but do not have its attribute are left out of that index.
+ */
+@PackageScope
+class LoadedEntityIndex {
+
+    private Map<Class, List<Object>> entitiesByType = [:]
+    private Map<Class, Map<String, Map<Object, List<Object>>>> attributeIndexes = [:]
+    private Map<Class, Map<String, Field>> fieldsByClass = [:]
+
+    /**
+     * Adds an entity to the index and records the current values of its indexed attributes.
+     *
+     * @param entity the entity
+     */
+    void add(Object entity) {
+        typesOf(entity.getClass()).each { type ->
+            entitiesByType.get(type, []) << entity
+            attributeIndexes[type]?.each { attribute, index ->
+                if (hasAttribute(entity, attribute)) {
+                    index.get(valueOf(entity, attribute), []) << entity
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes an entity from the index.
+     *
+     * @param entity the entity
+     */
+    void remove(Object entity) {
+        typesOf(entity.getClass()).each { type ->
+            removeByIdentity(entitiesByType[type], entity)
+            attributeIndexes[type]?.values()?.each { index ->
+                index.values().each { removeByIdentity(it, entity) }
+            }
+        }
+    }
+
+    /**
+     * @param type the requested class
+     * @return all entities that are instances of the passed class, in the order they were added
+     */
+    public <T> List<T> getEntitiesByType(Class<T> type) {
+        return (entitiesByType[type] ?: []).asImmutable()
+    }
+
+    /**
+     * Returns all entities of the passed class whose attribute had the passed value when it was recorded. Creates the
+     * attribute index from the current field values of the entities added so far if it does not exist yet.
+     *
+     * @param type the requested class
+     * @param attribute the name of the attribute
+     * @param value the requested value
+     * @return matching entities, in the order they were added
+     * @throws IllegalArgumentException if an entity of the passed class does not have the attribute
+     */
+    public <T> List<T> find(Class<T> type, String attribute, Object value) {
+        return (indexFor(type, attribute)[value] ?: []).asImmutable()
+    }
+
+    /**
+     * Creates the hash index for the passed class and attribute, if it does not exist yet.
+     *
+     * @param type the class
+     * @param attribute the name of the attribute
+     * @throws IllegalArgumentException if an entity of the passed class does not have the attribute
+     */
+    void createIndex(Class type, String attribute) {
+        indexFor(type, attribute)
+    }
+
+    private Map<Object, List<Object>> indexFor(Class type, String attribute) {
+        Map<String, Map<Object, List<Object>>> indexesOfType = attributeIndexes.get(type, [:])
+        if (!indexesOfType.containsKey(attribute)) {
+            Map<Object, List<Object>> index = [:]
+            entitiesByType[type]?.each { index.get(valueOf(it, attribute), []) << it }
+            indexesOfType[attribute] = index
+        }
+        return indexesOfType[attribute]
+    }
+
+    /**
+     * Removes all entities. The attribute indexes are kept, but emptied.
+     */
+    void clear() {
+        entitiesByType.clear()
+        attributeIndexes.values().each { indexesOfType -> indexesOfType.values()*.clear() }
+    }
+
+    private static Set<Class> typesOf(Class entityClass) {
+        Set<Class> types = new LinkedHashSet<>()
+        for (Class type = entityClass; type != null; type = type.superclass) {
+            types << type
+            addInterfaces(type, types)
+        }
+        return types
+    }
+
+    private static void addInterfaces(Class type, Set<Class> types) {
+        type.interfaces.each {
+            if (types.add(it)) {
+                addInterfaces(it, types)
+            }
+        }
+    }
+
+    private boolean hasAttribute(Object entity, String attribute) {
+        return fieldOf(entity.getClass(), attribute) != null
+    }
+
+    private Object valueOf(Object entity, String attribute) {
+        Field field = fieldOf(entity.getClass(), attribute)
+        if (field == null) {
+            throw new IllegalArgumentException("entity $entity does not have an attribute named '$attribute'")
+        }
+        return field.get(entity)
+    }
+
+    private Field fieldOf(Class entityClass, String attribute) {
+        Map<String, Field> fields = fieldsByClass.get(entityClass, [:])
+        if (!fields.containsKey(attribute)) {
+            fields[attribute] = findField(entityClass, attribute)
+        }
+        return fields[attribute]
+    }
+
+    private static Field findField(Class entityClass, String attribute) {
+        for (Class type = entityClass; type != null && type != Object; type = type.superclass) {
+            Field field = type.declaredFields.find {
+                it.name == attribute && !it.synthetic && !Modifier.isStatic(it.modifiers)
+            }
+            if (field != null) {
+                field.accessible = true
+                return field
+            }
+        }
+        return null
+    }
+
+    private static void removeByIdentity(List<Object> entities, Object entity) {
+        entities?.removeAll { it.is(entity) }
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.persistence.EntityManager
+import javax.persistence.EntityManagerFactory
+
+/**
+ * A database of a {@link TestDataLoaderPool}, leased by {@link TestDataLoaderPool#lease()}. Provides a
+ * {@link TestDataLoader} that has loaded the pool's baseline entity definition files and returns the database to the
+ * pool when closed.<br>
+ * <br>
+ * On return, all entities loaded by the {@code TestDataLoader} during the lease are deleted. If that fails, or if the
+ * baseline entities or other data have been changed and {@link #invalidate()} has been called, the database is
+ * dropped and recreated under a new name, and the baseline is loaded again.
+ */
+class PooledDatabase implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledDatabase)
+
+    private TestDataLoaderPool pool
+    private String baseName
+    private int generation
+    private String name
+    private EntityManagerFactory entityManagerFactory
+    private EntityManager entityManager
+    private TestDataLoader testDataLoader
+    private boolean leased
+    private boolean invalidated
+
+    protected PooledDatabase(TestDataLoaderPool pool, String baseName) {
+        this.pool = pool
+        this.baseName = baseName
+    }
+
+    /**
+     * @return the unique name of this database, consisting of the name of its slot in the pool and a counter that is
+     * incremented whenever the database is recreated, e. g. {@code testdata_fork1_0_2}
+     */
+    String getName() {
+        return name
+    }
+
+    /**
+     * @return the {@link TestDataLoader} of this database, with the baseline entities loaded
+     */
+    TestDataLoader getTestDataLoader() {
+        return testDataLoader
+    }
+
+    /**
+     * @return the {@link EntityManager} used by the {@link TestDataLoader} of this database
+     */
+    EntityManager getEntityManager() {
+        return entityManager
+    }
+
+    /**
+     * @return the {@link EntityManagerFactory} of this database
+     */
+    EntityManagerFactory getEntityManagerFactory() {
+        return entityManagerFactory
+    }
+
+    /**
+     * Forces the database to be recreated when it is returned to the pool, e. g. because baseline entities or data
+     * not loaded by the {@link TestDataLoader} have been changed.
+     */
+    void invalidate() {
+        invalidated = true
+    }
+
+    /**
+     * Returns the database to the pool. Has no effect if the database is not leased.
+     */
+    @Override
+    void close() {
+        if (leased) {
+            leased = false
+            pool.release(this)
+        }
+    }
+
+    protected void lease(IsolatedDatabaseFactory databaseFactory, Collection<String> baselineFiles) {
+        if (entityManagerFactory == null) {
+            open(databaseFactory, baselineFiles)
+        }
+        leased = true
+    }
+
+    protected void open(IsolatedDatabaseFactory databaseFactory, Collection<String> baselineFiles) {
+        invalidated = false
+        // a database that is dropped may outlive its EntityManagerFactory, so it is never reused
+        name = "${baseName}_${generation++}"
+        try {
+            entityManagerFactory = databaseFactory.createEntityManagerFactory(name)
+            entityManager = entityManagerFactory.createEntityManager()
+            testDataLoader = new TestDataLoader(entityManager)
+            testDataLoader.loadTestData(baselineFiles)
+            if (!testDataLoader.lastLoadReport.successful) {
+                throw new IllegalStateException("loading the baseline $baselineFiles into database $name failed")
+            }
+            testDataLoader.markBaseline()
+        } catch (RuntimeException e) {
+            discard(databaseFactory)
+            throw e
+        }
+    }
+
+    /**
+     * Deletes the entities loaded during the lease or recreates the database if that is not possible.
+     */
+    protected void reset(IsolatedDatabaseFactory databaseFactory, Collection<String> baselineFiles) {
+        if (entityManagerFactory == null) {
+            return
+        }
+        if (entityManager.transaction.active) {
+            entityManager.transaction.rollback()
+        }
+        if (!invalidated && testDataLoader.resetToBaseline()) {
+            return
+        }
+        LOG.debug("recreating database {}", name)
+        discard(databaseFactory)
+        open(databaseFactory, baselineFiles)
+    }
+
+    /**
+     * Drops and closes the database, a new one is opened on the next lease.
+     */
+    protected void discard(IsolatedDatabaseFactory databaseFactory) {
+        if (entityManagerFactory == null) {
+            return
+        }
+        if (entityManager != null) {
+            try {
+                if (entityManager.transaction.active) {
+                    entityManager.transaction.rollback()
+                }
+                databaseFactory.dropDatabase(name, entityManager)
+            } catch (RuntimeException e) {
+                LOG.warn("dropping database $name failed", e)
+            }
+        }
+        try {
+            entityManager?.close()
+            entityManagerFactory.close()
+        } catch (RuntimeException e) {
+            LOG.warn("closing database $name failed", e)
+        }
+        entityManager = null
+        entityManagerFactory = null
+        testDataLoader = null
+    }
+}
@@ -28,9 +28,15 @@ import org.slf4j.LoggerFactory
 
 import de.triology.testdata.builder.EntitiesScriptExecutor
 import de.triology.testdata.builder.EntityBuilderListener
-import de.triology.testdata.util.FileReader
+import de.triology.testdata.fixture.BinaryFixtureReader
+import de.triology.testdata.fixture.BinaryFixtureWriter
+import de.triology.testdata.util.DefinitionSources
 
 import javax.persistence.EntityManager
+import javax.persistence.EntityManagerFactory
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
 
 /**
  * Loads test data from entity definition files, saves them to a database via a specified {@link EntityManager} and
@@ -45,15 +51,43 @@ class TestDataLoader implements EntityBuilderListener {
         RESOURCE_LOCAL, JTA
     }
 
+    /**
+     * Defines when the {@code TestDataLoader} persists created entities.
+     */
+    public enum PersistenceMode {
+        /**
+         * Each entity is persisted as soon as it is completely created, i. e. nested entities before the entities
+         * enclosing them.
+         */
+        IMMEDIATE,
+        /**
+         * All entities of a load are persisted after all entity definition files have been executed, ordered by the
+         * associations declared in the JPA metamodel so that each entity is inserted after the entities it
+         * references. Reference cycles are logged and reported in the {@link LoadReport}.
+         */
+        DEFERRED
+    }
+
     private static final Logger LOG = LoggerFactory.getLogger(TestDataLoader)
 
     private Map<String, ?> loadedEntities = [:].withDefault {
         throw new NoSuchElementException("an entity named '$it' has not been created")
     }
 
+    private LoadedEntityIndex entityIndex = new LoadedEntityIndex()
+
     private EntityManager entityManager
     private EntityDeleter entityDeleter
     private TransactionType transactionType
+    private PersistenceMode persistenceMode = PersistenceMode.IMMEDIATE
+    private LoadProfile loadProfile
+    private boolean detachCommittedEntities
+    private LoadReport lastLoadReport
+    private int entitiesCreatedDuringLoad
+    private List<List<String>> dependencyCyclesDuringLoad
+    private Map<String, ?> baselineEntities = [:]
+    private int baselineEntityCount
+    private BackgroundLoad backgroundLoad
 
     /**
      * Creates a new TestDataLoader that uses the specified JPA EntityManager to save and delete entities.
@@ -112,22 +146,357 @@ class TestDataLoader implements EntityBuilderListener {
     }
 
     /**
-     * Loads the entities defined in the passed {@code entityDefinitionFiles} into the database.
+     * Loads the entities defined in the passed {@code entityDefinitionFiles} into the database. If the same files are
+     * being loaded by {@link #loadTestDataInBackground(Collection)}, waits for that load instead of loading them again.
      *
      * @param entityDefinitionFiles {@link Collection} of Strings - the names of files containing the entity
-     * definitions. The files are expected to be UTF-8 encoded.
+     * definitions, of directories containing such files or glob patterns matching them, see
+     * {@link DefinitionSources}. The files are expected to be UTF-8 encoded.
      */
     void loadTestData(Collection<String> entityDefinitionFiles) {
+        BackgroundLoad load = takeBackgroundLoad()
+        if (load != null && load.files == new ArrayList<>(entityDefinitionFiles)) {
+            load.getReport()
+            return
+        }
+        loadDefinitionFiles(entityDefinitionFiles, persistenceMode, loadProfile)
+    }
+
+    private void loadDefinitionFiles(Collection<String> entityDefinitionFiles, PersistenceMode persistenceMode,
+                                     LoadProfile loadProfile) {
+        List<String> definitionFiles = DefinitionSources.expand(entityDefinitionFiles)
+        if (persistenceMode == PersistenceMode.DEFERRED) {
+            loadTestDataDeferred(definitionFiles, loadProfile)
+            return
+        }
+
         EntityPersister persister = new EntityPersister(entityManager)
         EntitiesScriptExecutor scriptExecutor = new EntitiesScriptExecutor()
                 .addEntityBuilderListener(this)
                 .addEntityBuilderListener(persister)
                 .addEntityBuilderListener(entityDeleter)
 
-        withTransaction {
-            entityDefinitionFiles.each {
-                scriptExecutor.execute(FileReader.create(it))
+        withLoadReport(definitionFiles, loadProfile) {
+            withTransaction {
+                definitionFiles.each {
+                    scriptExecutor.execute(DefinitionSources.load(it))
+                }
+            }
+        }
+    }
+
+    private void loadTestDataDeferred(List<String> entityDefinitionFiles, LoadProfile loadProfile) {
+        // the deleter is notified in insertion order, so that it deletes in reverse insertion order
+        DeferredEntityPersister persister = new DeferredEntityPersister(entityManager,
+                new EntityDependencies(entityManager.getMetamodel()), entityDeleter)
+        EntitiesScriptExecutor scriptExecutor = new EntitiesScriptExecutor()
+                .addEntityBuilderListener(this)
+                .addEntityBuilderListener(persister)
+
+        withLoadReport(entityDefinitionFiles, loadProfile) {
+            withTransaction {
+                entityDefinitionFiles.each {
+                    scriptExecutor.execute(DefinitionSources.load(it))
+                }
+                dependencyCyclesDuringLoad = persister.persistAll()
+            }
+        }
+    }
+
+    /**
+     * Starts resolving and compiling the passed entity definition files on a background thread, so that subsequent
+     * loads of these files by any {@code TestDataLoader} do not have to compile them anymore. Loads that need a file
+     * which is still being compiled wait for its compilation to complete.
+     *
+     * @param entityDefinitionFiles {@link Collection} of Strings - the names of files containing the entity
+     * definitions, of directories containing such files or glob patterns matching them, see {@link DefinitionSources}
+     * @return a {@link Future} of the names of the compiled files, which fails if any of the files cannot be compiled
+     */
+    static Future<List<String>> prefetch(Collection<String> entityDefinitionFiles) {
+        return DefinitionPrefetcher.prefetch(entityDefinitionFiles, null)
+    }
+
+    /**
+     * Starts compiling the passed entity definition files like {@link #prefetch(Collection)} and initializes the
+     * metamodel of the passed {@link EntityManagerFactory} on a background thread.
+     *
+     * @param entityDefinitionFiles {@link Collection} of Strings - the names of the entity definition files
+     * @param entityManagerFactory the {@link EntityManagerFactory} whose metamodel to initialize
+     * @return a {@link Future} of the names of the compiled files
+     */
+    static Future<List<String>> prefetch(Collection<String> entityDefinitionFiles,
+                                         EntityManagerFactory entityManagerFactory) {
+        return DefinitionPrefetcher.prefetch(entityDefinitionFiles, entityManagerFactory)
+    }
+
+    /**
+     * Starts loading the entities defined in the passed {@code entityDefinitionFiles} into the database on a
+     * background thread, like {@link #loadTestData(Collection)}.<br>
+     * <br>
+     * All methods of this {@code TestDataLoader} that access loaded entities or the database wait for the load to
+     * complete first. Only {@link #loadTestData(Collection)} with the same files reports a failure of the load by
+     * throwing the exception the load has failed with, it does not load the files again. The other methods do not
+     * throw because of a failed background load. The {@code EntityManager} must not be used until the load is
+     * complete. The load uses the {@link PersistenceMode} and {@link LoadProfile} set when it is started. Requires
+     * {@code TransactionType.RESOURCE_LOCAL}.
+     *
+     * @param entityDefinitionFiles {@link Collection} of Strings - the names of the entity definition files
+     * @return a {@link Future} of the {@link LoadReport} of the load, which also becomes the
+     * {@link #getLastLoadReport() last load report}. If the load fails with an exception, the {@code Future} fails
+     * with it and the last load report is an unsuccessful one.
+     */
+    Future<LoadReport> loadTestDataInBackground(Collection<String> entityDefinitionFiles) {
+        takeBackgroundLoad()
+        if (!newTransactionRequired()) {
+            throw new IllegalStateException('loading test data in the background requires the TestDataLoader to ' +
+                    'manage RESOURCE_LOCAL transactions itself, but transactions are managed by client code')
+        }
+        List<String> files = new ArrayList<>(entityDefinitionFiles)
+        PersistenceMode mode = persistenceMode
+        LoadProfile profile = loadProfile
+        LoadReport previousReport = lastLoadReport
+        Future<LoadReport> result = DefinitionPrefetcher.submit({
+            loadInBackground(files, mode, profile, previousReport)
+        } as Callable<LoadReport>)
+        backgroundLoad = new BackgroundLoad(files, result)
+        return result
+    }
+
+    /**
+     * Runs on the background thread. Accesses {@code lastLoadReport} directly, as its getter waits for the load.
+     */
+    private LoadReport loadInBackground(List<String> files, PersistenceMode mode, LoadProfile profile,
+                                        LoadReport previousReport) {
+        try {
+            loadDefinitionFiles(files, mode, profile)
+        } catch (Exception e) {
+            if (lastLoadReport.is(previousReport)) {
+                // failed before the load report has been created, e. g. because a file cannot be found
+                lastLoadReport = new LoadReport(files, 0, profile, 0, false, [])
+            }
+            throw e
+        }
+        return lastLoadReport
+    }
+
+    /**
+     * Waits for the background load, if any, to complete, regardless of whether it succeeds.
+     */
+    private void awaitBackgroundLoad() {
+        backgroundLoad?.awaitCompletion()
+    }
+
+    /**
+     * Waits for the background load, if any, to complete and returns it. Subsequent loads replace it.
+     */
+    private BackgroundLoad takeBackgroundLoad() {
+        BackgroundLoad load = backgroundLoad
+        load?.awaitCompletion()
+        backgroundLoad = null
+        return load
+    }
+
+    /**
+     * Loads the entities stored in the passed binary fixture files into the database. Binary fixtures are written by
+     * a {@link BinaryFixtureWriter} from entity definition files, e. g. once during the build, and can be loaded
+     * without executing any Groovy script. The entities are persisted according to the {@link PersistenceMode} and
+     * are available by their names just like entities loaded from entity definition files.
+     *
+     * @param fixtureFiles {@link Collection} of Strings - the names of binary fixture files, either as classpath or
+     * file system resources
+     */
+    void loadBinaryFixtures(Collection<String> fixtureFiles) {
+        takeBackgroundLoad()
+        BinaryFixtureReader reader = new BinaryFixtureReader().addEntityBuilderListener(this)
+        DeferredEntityPersister deferredPersister = null
+        if (persistenceMode == PersistenceMode.DEFERRED) {
+            deferredPersister = new DeferredEntityPersister(entityManager,
+                    new EntityDependencies(entityManager.getMetamodel()), entityDeleter)
+            reader.addEntityBuilderListener(deferredPersister)
+        } else {
+            reader.addEntityBuilderListener(new EntityPersister(entityManager))
+                    .addEntityBuilderListener(entityDeleter)
+        }
+
+        withLoadReport(fixtureFiles, loadProfile) {
+            withTransaction {
+                fixtureFiles.each { fixtureFile ->
+                    DefinitionSources.resolve(fixtureFile).toURL().withInputStream { reader.read(it) }
+                }
+                if (deferredPersister != null) {
+                    dependencyCyclesDuringLoad = deferredPersister.persistAll()
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads the entities defined in the passed {@code entityDefinitionFiles} into the database, committing the
+     * transaction after every {@code commitInterval} entities instead of once for all files.
+     *
+     * If loading fails, only the entities created since the last commit are rolled back and a
+     * {@link TestDataLoadException} is thrown. Its {@link LoadCheckpoint} can be passed to
+     * {@link #loadTestData(Collection, int, LoadCheckpoint)} to resume loading.
+     *
+     * @param entityDefinitionFiles {@link Collection} of Strings - the names of files containing the entity
+     * definitions, of directories containing such files or glob patterns matching them, see
+     * {@link DefinitionSources}. The files are expected to be UTF-8 encoded.
+     * Committed entities stay managed by the EntityManager, unless {@link #setDetachCommittedEntities(boolean)} is
+     * used to keep the persistence context small.
+     *
+     * @param commitInterval the number of entities after which the transaction is committed. Commits only take place
+     * after a top level entity has been completed, so chunks can be slightly larger.
+     * @throws TestDataLoadException if loading any of the entities fails
+     */
+    void loadTestData(Collection<String> entityDefinitionFiles, int commitInterval) {
+        loadTestData(entityDefinitionFiles, commitInterval, null)
+    }
+
+    /**
+     * Resumes loading the entities defined in the passed {@code entityDefinitionFiles} after the specified
+     * {@link LoadCheckpoint}, committing the transaction after every {@code commitInterval} entities.
+     *
+     * All definition files are executed again, but entities created up to and including the checkpoint are not
+     * persisted again. Instead, they are looked up in the database by their IDs and the managed instances found are
+     * made available through {@code getEntityByName}. Resuming therefore requires the IDs of these entities to be
+     * assigned in the entity definition files, generated IDs are not supported. Associations of the entities created
+     * after the checkpoint are changed to refer to the managed instances, as long as they are declared in the JPA
+     * metamodel. The files have to be passed in the same order and with the same content as for the load that created
+     * the checkpoint.
+     *
+     * @param entityDefinitionFiles {@link Collection} of Strings - the names of files containing the entity
+     * definitions, of directories containing such files or glob patterns matching them, see
+     * {@link DefinitionSources}. The files are expected to be UTF-8 encoded.
+     * @param commitInterval the number of entities after which the transaction is committed
+     * @param resumeFrom the checkpoint to resume from, as provided by a {@link TestDataLoadException}. If null,
+     * all entities are loaded.
+     * @throws TestDataLoadException if loading any of the entities fails
+     */
+    void loadTestData(Collection<String> entityDefinitionFiles, int commitInterval, LoadCheckpoint resumeFrom) {
+        takeBackgroundLoad()
+        List<String> definitionFiles = DefinitionSources.expand(entityDefinitionFiles)
+        checkChunkedLoadingIsPossible(definitionFiles, commitInterval, resumeFrom)
+
+        EntitiesScriptExecutor scriptExecutor = new EntitiesScriptExecutor()
+        CheckpointingEntityPersister persister = new CheckpointingEntityPersister(entityManager, scriptExecutor,
+                commitInterval, resumeFrom, detachCommittedEntities, [this, entityDeleter])
+        scriptExecutor.addEntityBuilderListener(persister)
+
+        String currentFile = null
+        withLoadReport(definitionFiles, loadProfile) {
+            try {
+                entityManager.getTransaction().begin()
+                definitionFiles.each {
+                    currentFile = it
+                    persister.startFile(it)
+                    scriptExecutor.execute(DefinitionSources.load(it))
+                }
+                persister.finish()
+                return true
+            } catch (Exception e) {
+                rollbackIfActive()
+                throw new TestDataLoadException("loading entity definition file '$currentFile' failed, entities up " +
+                        "to ${persister.lastCheckpoint ?: 'the start of the load'} have been committed",
+                        persister.lastCheckpoint, e)
+            }
+        }
+    }
+
+    /**
+     * Runs the passed load with the {@link LoadProfile} applied, if any, and creates a {@link LoadReport} for it.
+     *
+     * @param doLoad the load to run, returns true if all entities have been committed
+     */
+    private void withLoadReport(Collection<String> entityDefinitionFiles, LoadProfile loadProfile,
+                                Closure<Boolean> doLoad) {
+        entitiesCreatedDuringLoad = 0
+        dependencyCyclesDuringLoad = []
+        Closure restoreSettings = loadProfile?.applyTo(entityManager)
+        boolean successful = false
+        long start = System.nanoTime()
+        try {
+            successful = doLoad()
+        } finally {
+            long durationMillis = (System.nanoTime() - start).intdiv(1000000L)
+            if (restoreSettings) {
+                restoreSettings()
             }
+            lastLoadReport = new LoadReport(entityDefinitionFiles, entitiesCreatedDuringLoad, loadProfile,
+                    durationMillis, successful, dependencyCyclesDuringLoad)
+            LOG.debug("{}", lastLoadReport)
+        }
+    }
+
+    /**
+     * Sets the {@link PersistenceMode} used by subsequent calls to {@link #loadTestData(Collection)}. Defaults to
+     * {@code PersistenceMode.IMMEDIATE}. Loads with a commit interval require {@code PersistenceMode.IMMEDIATE}.
+     *
+     * @param persistenceMode {@link PersistenceMode}
+     */
+    void setPersistenceMode(PersistenceMode persistenceMode) {
+        if (persistenceMode == null) {
+            throw new IllegalArgumentException("persistenceMode must not be null")
+        }
+        this.persistenceMode = persistenceMode
+    }
+
+    /**
+     * Sets whether loads with a commit interval detach the entities of each chunk from the EntityManager after they
+     * have been committed. Otherwise, all committed entities stay managed, so each commit has to check an ever growing
+     * persistence context for changes, which makes very large loads slow and keeps all entities in memory.<br>
+     * <br>
+     * When detached, {@code getEntityByName} and the other lookup methods return the detached entities. Use
+     * {@code EntityManager.merge} or {@code find} to get managed instances. Defaults to false.
+     *
+     * @param detachCommittedEntities true to detach committed entities
+     */
+    void setDetachCommittedEntities(boolean detachCommittedEntities) {
+        this.detachCommittedEntities = detachCommittedEntities
+    }
+
+    /**
+     * Sets the {@link LoadProfile} that is applied to the EntityManager for the duration of each subsequent call to one
+     * of the {@code loadTestData} methods, e. g. {@link LoadProfile#bulkInsert()}. The EntityManager's previous
+     * settings are restored after each load.
+     *
+     * @param loadProfile the {@link LoadProfile} to apply or null to leave the EntityManager's settings untouched
+     */
+    void setLoadProfile(LoadProfile loadProfile) {
+        this.loadProfile = loadProfile
+    }
+
+    /**
+     * @return the {@link LoadReport} of the most recent call to one of the {@code loadTestData} methods or null, if no
+     * test data has been loaded yet. Waits for a background load to complete, see
+     * {@link #loadTestDataInBackground(Collection)}.
+     */
+    LoadReport getLastLoadReport() {
+        awaitBackgroundLoad()
+        return lastLoadReport
+    }
+
+    private void checkChunkedLoadingIsPossible(Collection<String> entityDefinitionFiles, int commitInterval,
+                                               LoadCheckpoint resumeFrom) {
+        if (commitInterval < 1) {
+            throw new IllegalArgumentException("commitInterval must be positive but was $commitInterval")
+        }
+        if (resumeFrom != null && !entityDefinitionFiles.contains(resumeFrom.fileName)) {
+            throw new IllegalArgumentException(
+                    "the file '$resumeFrom.fileName' of the checkpoint is not among the entity definition files")
+        }
+        if (persistenceMode != PersistenceMode.IMMEDIATE) {
+            throw new IllegalStateException(
+                    'loading test data with a commit interval requires PersistenceMode.IMMEDIATE')
+        }
+        if (!newTransactionRequired()) {
+            throw new IllegalStateException('loading test data with a commit interval requires the TestDataLoader ' +
+                    'to manage RESOURCE_LOCAL transactions itself, but transactions are managed by client code')
+        }
+    }
+
+    private void rollbackIfActive() {
+        if (entityManager.getTransaction().isActive()) {
+            entityManager.getTransaction().rollback()
         }
     }
 
@@ -136,17 +505,18 @@ class TestDataLoader implements EntityBuilderListener {
      * this {@code TestDataLoader}'s  {@code loadTestData} method.
      *
      * If no entity with the specified name has been loaded, an {@link NoSuchElementException} is thrown. If an entity
-     * is found but has a different class than the passed {@code entityClass}, an {@link IllegalArgumentException} is
+     * is found but is not an instance of the passed {@code entityClass}, an {@link IllegalArgumentException} is
      * thrown.
      *
      * @param name {@link String} - the requested entity's name
-     * @param entityClass the requested entity's {@link Class}
+     * @param entityClass the requested entity's {@link Class} or one of its superclasses or interfaces
      * @return the requested entity
      */
     public <T> T getEntityByName(String name, Class<T> entityClass) {
+        awaitBackgroundLoad()
         def entity = loadedEntities[name]
 
-        if (entityClass != entity.class) {
+        if (!entityClass.isInstance(entity)) {
             throw new IllegalArgumentException(
             "The class of the requested entity named '$name' does not match the requested class. Requested: $entityClass, Actual: ${entity.class}")
         }
@@ -154,29 +524,109 @@ class TestDataLoader implements EntityBuilderListener {
         return entity
     }
 
+    /**
+     * Gets all entities created from entity definition files passed to this {@code TestDataLoader}'s
+     * {@code loadTestData} methods that are instances of the specified class, without querying the database.
+     *
+     * @param entityClass the requested {@link Class}, may be a superclass or interface of the entities' classes
+     * @return the entities in the order they were created, an empty list if there are none
+     */
+    public <T> List<T> getEntitiesByType(Class<T> entityClass) {
+        awaitBackgroundLoad()
+        return entityIndex.getEntitiesByType(entityClass)
+    }
+
+    /**
+     * Gets all loaded entities that are instances of the specified class and whose attribute has the specified value,
+     * without querying the database. Attribute values are read from the entities' fields, not through getters.<br>
+     * <br>
+     * Only attributes declared by {@link #indexAttribute(Class, String)} are recorded while loading, and only then are
+     * entities found by the values they had when they were created by the entity definition file. Otherwise, the hash
+     * index for the class and attribute is created on first use from the values the already loaded entities have at
+     * that moment, and records the values of subsequently loaded entities when they are created. Later changes to
+     * loaded entities are not reflected. This includes IDs that are generated when entities are persisted, so entities
+     * cannot be found by generated IDs, use {@code EntityManager.find} instead.
+     *
+     * @param entityClass the requested {@link Class}, may be a superclass or interface of the entities' classes
+     * @param attribute the name of the attribute, e. g. {@code "login"}
+     * @param value the requested value of the attribute
+     * @return the matching entities in the order they were created, an empty list if there are none
+     * @throws IllegalArgumentException if an entity of the requested class does not have the attribute
+     */
+    public <T> List<T> findLoaded(Class<T> entityClass, String attribute, Object value) {
+        awaitBackgroundLoad()
+        return entityIndex.find(entityClass, attribute, value)
+    }
+
+    /**
+     * Creates the hash index used by {@link #findLoaded(Class, String, Object)} for the specified class and attribute
+     * right away instead of on first use. Call it before loading to record the attribute values entities are created
+     * with. The index is kept when the entity cache is cleared, and loaded entities without the attribute are left out.
+     *
+     * @param entityClass the {@link Class}, may be a superclass or interface of the entities' classes
+     * @param attribute the name of the attribute
+     * @throws IllegalArgumentException if an already loaded entity of the class does not have the attribute
+     */
+    void indexAttribute(Class entityClass, String attribute) {
+        awaitBackgroundLoad()
+        entityIndex.createIndex(entityClass, attribute)
+    }
+
     /**
      * Clears all previously built entities so that they are no longer available through the {@code getEntityByName}
      * method and deletes all data from the database.
      */
     void clearEntityCacheAndDatabase() {
+        awaitBackgroundLoad()
         withTransaction { entityDeleter.deleteAllEntities() }
         clearEntityCache()
     }
 
+    /**
+     * Clears all previously built entities so that they are no longer available through the {@code getEntityByName}
+     * method and deletes all data from the database, like {@link #clearEntityCacheAndDatabase()}. Entities that are not
+     * associated with each other, directly or indirectly, are deleted concurrently, each group with its own
+     * EntityManager created by the passed factory.<br>
+     * <br>
+     * Requires {@code TransactionType.RESOURCE_LOCAL} and no active transaction on this {@code TestDataLoader}'s
+     * EntityManager, since the entities are deleted in separate transactions.<br>
+     * <br>
+     * The entity cache is cleared even if deleting some of the groups fails. The entities of those groups are still
+     * deleted by the next call of this method or {@link #clearEntityCacheAndDatabase()}.
+     *
+     * @param entityManagerFactory the {@link EntityManagerFactory} of the persistence unit the entities were loaded into
+     * @throws IllegalStateException if deleting any of the groups fails
+     */
+    void clearEntityCacheAndDatabase(EntityManagerFactory entityManagerFactory) {
+        awaitBackgroundLoad()
+        if (!newTransactionRequired()) {
+            throw new IllegalStateException('deleting entities in parallel requires RESOURCE_LOCAL transactions and ' +
+                    'no active transaction on the EntityManager of the TestDataLoader')
+        }
+        try {
+            entityDeleter.deleteAllEntitiesInParallel(entityManagerFactory)
+        } finally {
+            clearEntityCache()
+        }
+    }
+
     /**
      * Clears all previously built entities so that they are no longer available through the {@code getEntityByName}
      * method.
      */
     void clearEntityCache() {
+        awaitBackgroundLoad()
         loadedEntities.clear()
+        entityIndex.clear()
     }
 
-    private void withTransaction(Closure doWithinTransaction) {
+    private boolean withTransaction(Closure doWithinTransaction) {
         if (newTransactionRequired()) {
-            withNewTransaction(doWithinTransaction)
+            return withNewTransaction(doWithinTransaction)
         } else {
             // Someone else is taking care of transaction handling
             doWithinTransaction()
+            return true
         }
     }
 
@@ -185,23 +635,103 @@ class TestDataLoader implements EntityBuilderListener {
                 !entityManager.getTransaction().isActive()
     }
 
-    private void withNewTransaction(Closure doWithinTransaction) {
+    private boolean withNewTransaction(Closure doWithinTransaction) {
         try {
             entityManager.getTransaction().begin()
             doWithinTransaction()
             entityManager.getTransaction().commit()
+            return true
         } catch (Exception e) {
             e.printStackTrace()
             entityManager.getTransaction().rollback()
+            return false
+        }
+    }
+
+    /**
+     * Marks all entities loaded so far as baseline, which is kept by {@link #resetToBaseline()}.
+     */
+    protected void markBaseline() {
+        awaitBackgroundLoad()
+        baselineEntities = new LinkedHashMap<>(loadedEntities)
+        baselineEntityCount = entityDeleter.entityCount
+    }
+
+    /**
+     * Deletes all entities loaded since the last call to {@link #markBaseline()} from the database and makes only the
+     * baseline entities available through the {@code getEntityByName} method again. Changes to the baseline entities
+     * are not reverted.
+     *
+     * @return true if the entities have been deleted, false if the transaction has been rolled back or baseline
+     * entities have been deleted as well
+     */
+    protected boolean resetToBaseline() {
+        awaitBackgroundLoad()
+        if (entityDeleter.entityCount < baselineEntityCount) {
+            return false
         }
+        boolean deleted = true
+        if (entityDeleter.entityCount > baselineEntityCount) {
+            deleted = withTransaction { entityDeleter.deleteEntitiesCreatedAfter(baselineEntityCount) }
+        }
+        loadedEntities.clear()
+        loadedEntities.putAll(baselineEntities)
+        entityIndex.clear()
+        baselineEntities.values().each { entityIndex.add(it) }
+        return deleted
     }
 
     @Override
     public void onEntityCreated(String name, Object entity) {
+        if (loadedEntities.containsKey(name)) {
+            entityIndex.remove(loadedEntities[name])
+        }
         loadedEntities[name]=entity
+        entityIndex.add(entity)
+        entitiesCreatedDuringLoad++
     }
 
     public void clear() {
+        awaitBackgroundLoad()
         loadedEntities.clear()
+        entityIndex.clear()
+    }
+
+    /**
+     * A load started by {@link #loadTestDataInBackground(Collection)}.
+     */
+    private static class BackgroundLoad {
+
+        final List<String> files
+        final Future<LoadReport> result
+
+        BackgroundLoad(List<String> files, Future<LoadReport> result) {
+            this.files = files
+            this.result = result
+        }
+
+        void awaitCompletion() {
+            try {
+                result.get()
+            } catch (ExecutionException ignored) {
+                // the failure is reported by the Future and the unsuccessful LoadReport
+            }
+        }
+
+        /**
+         * @return the report of the completed load
+         * @throws RuntimeException the exception the load has failed with, checked ones wrapped in an
+         * {@link IllegalStateException}
+         */
+        LoadReport getReport() {
+            try {
+                return result.get()
+            } catch (ExecutionException e) {
+                if (e.cause instanceof RuntimeException || e.cause instanceof Error) {
+                    throw e.cause
+                }
+                throw new IllegalStateException("loading $files in the background failed", e.cause)
+            }
+        }
     }
 }
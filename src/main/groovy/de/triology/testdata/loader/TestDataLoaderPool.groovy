@@ -0,0 +1,208 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import javax.persistence.EntityManager
+import javax.persistence.EntityManagerFactory
+import javax.persistence.Persistence
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * A pool of isolated databases, e. g. H2 in-memory databases or schemas, each with a {@link TestDataLoader} that has
+ * loaded a baseline of entity definition files. Allows tests running in parallel, in several threads or test JVMs, to
+ * load test data concurrently instead of sharing one database.<br>
+ * <br>
+ * All databases are created and the baseline is loaded into them in parallel when the pool is created. A database is
+ * leased by a single thread at a time using {@link #lease()} and returned to the pool by
+ * {@link PooledDatabase#close()}, which deletes all entities loaded during the lease. Database names contain the
+ * {@link #getForkNumber() fork number} of the test JVM, so pools of different JVMs do not share databases.
+ */
+class TestDataLoaderPool implements Closeable {
+
+    /**
+     * System property that contains the number of the test JVM, e. g. set to {@code ${surefire.forkNumber}} in the
+     * {@code systemPropertyVariables} of the maven-surefire-plugin.
+     */
+    static final String FORK_NUMBER_PROPERTY = 'testdataloader.forkNumber'
+
+    /**
+     * Drops an H2 database, including an in-memory database kept open by {@code DB_CLOSE_DELAY=-1}.
+     */
+    static final String H2_DROP_STATEMENT = 'DROP ALL OBJECTS DELETE FILES'
+
+    private static final Logger LOG = LoggerFactory.getLogger(TestDataLoaderPool)
+
+    private IsolatedDatabaseFactory databaseFactory
+    private Collection<String> baselineFiles
+    private List<PooledDatabase> databases = []
+    private BlockingQueue<PooledDatabase> available
+
+    /**
+     * Creates the databases of a new pool and loads the baseline into each of them.
+     *
+     * @param databaseFactory creates the {@link EntityManagerFactory} of each database
+     * @param size the number of databases, e. g. the number of threads running tests in this JVM
+     * @param baselineFiles the entity definition files to load into each database, see
+     * {@link TestDataLoader#loadTestData(Collection)}
+     * @throws IllegalStateException if creating any of the databases fails
+     */
+    TestDataLoaderPool(IsolatedDatabaseFactory databaseFactory, int size, Collection<String> baselineFiles) {
+        if (size < 1) {
+            throw new IllegalArgumentException("size must be positive but was $size")
+        }
+        this.databaseFactory = databaseFactory
+        this.baselineFiles = new ArrayList<>(baselineFiles)
+        available = new ArrayBlockingQueue<>(size)
+        size.times { databases << new PooledDatabase(this, "testdata_fork${forkNumber}_$it") }
+        openAll()
+    }
+
+    /**
+     * Creates a pool of H2 databases of a persistence unit, each with its own JDBC URL, see
+     * {@link #forPersistenceUnit(String, String, String, int, Collection)}. Databases are dropped using
+     * {@value #H2_DROP_STATEMENT}.
+     *
+     * @param persistenceUnitName the name of the persistence unit
+     * @param jdbcUrlTemplate the JDBC URL of each database, {@code %s} is replaced by the database name, e. g.
+     * {@code jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1}
+     * @param size the number of databases
+     * @param baselineFiles the entity definition files to load into each database
+     * @return the pool
+     */
+    static TestDataLoaderPool forPersistenceUnit(String persistenceUnitName, String jdbcUrlTemplate, int size,
+                                                 Collection<String> baselineFiles) {
+        return forPersistenceUnit(persistenceUnitName, jdbcUrlTemplate, H2_DROP_STATEMENT, size, baselineFiles)
+    }
+
+    /**
+     * Creates a pool of databases of a persistence unit, each with its own JDBC URL. The persistence unit must create
+     * the schema, e. g. using {@code javax.persistence.schema-generation.database.action} or
+     * {@code eclipselink.ddl-generation}.
+     *
+     * @param persistenceUnitName the name of the persistence unit
+     * @param jdbcUrlTemplate the JDBC URL of each database, {@code %s} is replaced by the database name, e. g.
+     * {@code jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1}
+     * @param dropStatementTemplate the native SQL statement that drops a database, {@code %s} is replaced by the
+     * database name, e. g. {@code DROP SCHEMA %s CASCADE}
+     * @param size the number of databases
+     * @param baselineFiles the entity definition files to load into each database
+     * @return the pool
+     */
+    static TestDataLoaderPool forPersistenceUnit(String persistenceUnitName, String jdbcUrlTemplate,
+                                                 String dropStatementTemplate, int size,
+                                                 Collection<String> baselineFiles) {
+        IsolatedDatabaseFactory databaseFactory = [
+                createEntityManagerFactory: { String databaseName ->
+                    Persistence.createEntityManagerFactory(persistenceUnitName, [
+                            'javax.persistence.jdbc.url': String.format(jdbcUrlTemplate, databaseName),
+                            'eclipselink.session-name'  : databaseName
+                    ])
+                },
+                dropDatabase              : { String databaseName, EntityManager entityManager ->
+                    entityManager.transaction.begin()
+                    entityManager.createNativeQuery(String.format(dropStatementTemplate, databaseName)).executeUpdate()
+                    entityManager.transaction.commit()
+                }
+        ] as IsolatedDatabaseFactory
+        return new TestDataLoaderPool(databaseFactory, size, baselineFiles)
+    }
+
+    /**
+     * @return the number of the test JVM, taken from the system property {@value #FORK_NUMBER_PROPERTY} or
+     * {@code surefire.forkNumber}, defaults to 1
+     */
+    static String getForkNumber() {
+        return System.getProperty(FORK_NUMBER_PROPERTY) ?: System.getProperty('surefire.forkNumber', '1')
+    }
+
+    /**
+     * Leases a database, waiting until one is available. Close the returned {@link PooledDatabase} to return it.
+     *
+     * @return the leased database
+     * @throws InterruptedException if interrupted while waiting
+     */
+    PooledDatabase lease() throws InterruptedException {
+        PooledDatabase database = available.take()
+        try {
+            database.lease(databaseFactory, baselineFiles)
+        } catch (RuntimeException e) {
+            available.put(database)
+            throw e
+        }
+        return database
+    }
+
+    protected void release(PooledDatabase database) {
+        try {
+            database.reset(databaseFactory, baselineFiles)
+        } catch (RuntimeException e) {
+            LOG.warn("resetting database ${database.name} failed, it is recreated on the next lease", e)
+            database.discard(databaseFactory)
+        } finally {
+            available.put(database)
+        }
+    }
+
+    /**
+     * Drops and closes all databases of the pool, including leased ones.
+     */
+    @Override
+    void close() {
+        databases.each { it.discard(databaseFactory) }
+    }
+
+    private void openAll() {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(databases.size(), Runtime.getRuntime().availableProcessors()))
+        Throwable failure = null
+        try {
+            List<Future> results = databases.collect { database ->
+                executor.submit({ database.open(databaseFactory, baselineFiles) } as Runnable)
+            }
+            results.each {
+                try {
+                    it.get()
+                } catch (ExecutionException e) {
+                    failure = failure ?: e.cause
+                }
+            }
+        } finally {
+            executor.shutdown()
+        }
+        if (failure != null) {
+            close()
+            throw new IllegalStateException('creating the databases of the pool failed', failure)
+        }
+        databases.each { available.put(it) }
+        LOG.debug("created {} databases with baseline {}", databases.size(), baselineFiles)
+    }
+}
@@ -0,0 +1,82 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.util
+
+/**
+ * The content of an entity definition file together with its resolved location and a hash of its content.
+ */
+class DefinitionSource {
+
+    private final String name
+    private final URI location
+    private final String text
+    private final String contentHash
+
+    DefinitionSource(String name, URI location, String text, String contentHash) {
+        this.name = name
+        this.location = location
+        this.text = text
+        this.contentHash = contentHash
+    }
+
+    /**
+     * @return the name the source was requested with
+     */
+    String getName() {
+        return name
+    }
+
+    /**
+     * @return the location the name was resolved to
+     */
+    URI getLocation() {
+        return location
+    }
+
+    /**
+     * @return the UTF-8 decoded content
+     */
+    String getText() {
+        return text
+    }
+
+    /**
+     * @return the hex encoded SHA-256 hash of the raw content, identifying sources with the same content
+     */
+    String getContentHash() {
+        return contentHash
+    }
+
+    /**
+     * @return a new Reader for the content
+     */
+    Reader createReader() {
+        return new StringReader(text)
+    }
+
+    @Override
+    String toString() {
+        return "$name ($location)"
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.util
+
+import org.slf4j.Logger
+import org.slf4j.LoggerFactory
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.FileSystem
+import java.nio.file.FileSystemAlreadyExistsException
+import java.nio.file.FileSystemNotFoundException
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.InvalidPathException
+import java.nio.file.Path
+import java.nio.file.PathMatcher
+import java.nio.file.Paths
+import java.nio.file.StandardOpenOption
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.stream.Stream
+
+/**
+ * Resolves names of entity definition files to their locations and reads them. Like {@link FileReader}, a name is
+ * first looked up as classpath resource and then in the file system.<br>
+ * <br>
+ * Besides single files, names can denote directories, including folders within jar files on the classpath, and glob
+ * patterns like {@code tests/users/**.groovy}. These are expanded to the names of the contained {@code .groovy} files
+ * and the matching {@code .groovy} files, respectively. Names of existing files or directories are never treated as
+ * glob patterns, even if they contain glob characters like {@code [}.<br>
+ * <br>
+ * Resolved locations and expansions are cached for the lifetime of the JVM, see {@link #clearCache()}. File system
+ * sources are read through NIO channels and hashed while being read.
+ */
+class DefinitionSources {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefinitionSources.class)
+
+    private static final String DEFINITION_FILE_EXTENSION = '.groovy'
+
+    private static final Map<String, URI> locations = new ConcurrentHashMap<>()
+    private static final Map<String, List<String>> expansions = new ConcurrentHashMap<>()
+
+    private DefinitionSources() {}
+
+    /**
+     * Expands each of the passed names that denotes a directory or glob pattern to the names of the entity definition
+     * files it contains or matches, in alphabetical order. Other names are kept as they are.
+     *
+     * @param names names of files, directories or glob patterns, either as classpath or file system resources
+     * @return the names of the single entity definition files
+     * @throws FileNotFoundException if a directory or the base directory of a glob pattern cannot be found
+     */
+    static List<String> expand(Collection<String> names) throws FileNotFoundException {
+        return names.collectMany { expand(it) }
+    }
+
+    /**
+     * Expands the passed name as described in {@link #expand(Collection)}.
+     *
+     * @param name name of a file, directory or glob pattern
+     * @return the names of the single entity definition files
+     * @throws FileNotFoundException if a directory or the base directory of a glob pattern cannot be found
+     */
+    static List<String> expand(String name) throws FileNotFoundException {
+        List<String> expanded = expansions[name]
+        if (expanded == null) {
+            expanded = computeExpansion(name).asImmutable()
+            expansions[name] = expanded
+        }
+        return expanded
+    }
+
+    /**
+     * Resolves the passed name and reads the entity definition file. The file is expected to be UTF-8 encoded.
+     *
+     * @param name the name of the file, either as classpath or file system resource
+     * @return the {@link DefinitionSource}
+     * @throws FileNotFoundException if the file cannot be found
+     */
+    static DefinitionSource load(String name) throws IOException {
+        URI location = resolve(name)
+        LOG.trace("reading {} from {}", name, location)
+        MessageDigest digest = MessageDigest.getInstance('SHA-256')
+        ByteBuffer content = read(location)
+        digest.update(content.duplicate())
+        String text = StandardCharsets.UTF_8.decode(content).toString()
+        return new DefinitionSource(name, location, text, digest.digest().encodeHex().toString())
+    }
+
+    /**
+     * Resolves the passed name to the location of a file, first as classpath resource and then in the file system.
+     *
+     * @param name the name of the file, either as classpath or file system resource
+     * @return the location of the file
+     * @throws FileNotFoundException if the file cannot be found
+     */
+    static URI resolve(String name) throws FileNotFoundException {
+        URI location = locations[name]
+        if (location == null) {
+            location = computeLocation(name)
+            locations[name] = location
+        }
+        return location
+    }
+
+    /**
+     * Clears all cached locations and expansions, e. g. after files have been created or deleted.
+     */
+    static void clearCache() {
+        locations.clear()
+        expansions.clear()
+    }
+
+    private static URI computeLocation(String name) {
+        LOG.trace("resolving {}", name)
+        URL resource = resourceClassLoader().getResource(name)
+        if (resource != null) {
+            return resource.toURI()
+        }
+        Path path = Paths.get(name)
+        if (Files.isRegularFile(path)) {
+            return path.toAbsolutePath().toUri()
+        }
+        throw new FileNotFoundException("cannot find file '$name' in classpath or file system")
+    }
+
+    private static ByteBuffer read(URI location) {
+        if (location.scheme == 'file') {
+            return readFile(Paths.get(location))
+        }
+        return ByteBuffer.wrap(location.toURL().openStream().withStream { it.bytes })
+    }
+
+    private static ByteBuffer readFile(Path path) {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)
+        try {
+            // not memory-mapped, as a mapping keeps the file locked on Windows until it is garbage collected
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size())
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read until the buffer is full or the end of the file is reached
+            }
+            buffer.flip()
+            return buffer
+        } finally {
+            channel.close()
+        }
+    }
+
+    private static List<String> computeExpansion(String name) {
+        int globStart = name.findIndexOf { it in ['*', '?', '[', '{'] }
+        if (globStart < 0 || exists(name)) {
+            return isDirectory(name) ? listDefinitionFiles(name, null) : [name]
+        }
+
+        int baseEnd = name.lastIndexOf('/', globStart)
+        String baseDirectory = baseEnd < 0 ? '' : name.substring(0, baseEnd)
+        String glob = name.substring(baseEnd + 1)
+        return listDefinitionFiles(baseDirectory, FileSystems.default.getPathMatcher("glob:$glob"))
+    }
+
+    private static boolean exists(String name) {
+        if (resourceClassLoader().getResource(name) != null) {
+            return true
+        }
+        try {
+            return Files.exists(Paths.get(name))
+        } catch (InvalidPathException ignored) {
+            // e. g. '*' on Windows
+            return false
+        }
+    }
+
+    private static boolean isDirectory(String name) {
+        URL resource = resourceClassLoader().getResource(name)
+        if (resource != null) {
+            return withPath(resource.toURI()) { Path path -> Files.isDirectory(path) }
+        }
+        return Files.isDirectory(Paths.get(name))
+    }
+
+    private static List<String> listDefinitionFiles(String directory, PathMatcher matcher) {
+        Set<String> files = new TreeSet<>()
+        Enumeration<URL> resources = resourceClassLoader().getResources(directory)
+        if (resources.hasMoreElements()) {
+            resources.each { URL resource ->
+                withPath(resource.toURI()) { Path path ->
+                    files.addAll(listFiles(path, matcher).collect { join(directory, it) })
+                }
+            }
+        } else if (Files.isDirectory(Paths.get(directory ?: '.'))) {
+            files.addAll(listFiles(Paths.get(directory ?: '.'), matcher).collect { join(directory, it) })
+        } else {
+            throw new FileNotFoundException("cannot find directory '$directory' in classpath or file system")
+        }
+        LOG.debug("expanded {} to {} files", directory, files.size())
+        return files as List
+    }
+
+    private static List<String> listFiles(Path directory, PathMatcher matcher) {
+        if (!Files.isDirectory(directory)) {
+            return []
+        }
+        Stream<Path> paths = Files.walk(directory)
+        try {
+            return paths.iterator().findAll { Path path -> Files.isRegularFile(path) }
+                    .collect { Path path -> relativeName(directory, path) }
+                    .findAll { String relativePath -> matches(relativePath, matcher) }
+        } finally {
+            paths.close()
+        }
+    }
+
+    private static String relativeName(Path directory, Path path) {
+        return directory.relativize(path).toString().replace(directory.fileSystem.separator, '/')
+    }
+
+    private static boolean matches(String relativePath, PathMatcher matcher) {
+        return relativePath.endsWith(DEFINITION_FILE_EXTENSION) &&
+                (matcher == null || matcher.matches(Paths.get(relativePath)))
+    }
+
+    private static String join(String directory, String relativePath) {
+        return directory ? "${directory.endsWith('/') ? directory[0..-2] : directory}/$relativePath" : relativePath
+    }
+
+    /**
+     * Calls the closure with the path denoted by the URI, opening a file system for jar URIs if required.
+     */
+    private static <T> T withPath(URI uri, Closure<T> doWithPath) {
+        if (uri.scheme != 'jar') {
+            return doWithPath(Paths.get(uri))
+        }
+        FileSystem jarFileSystem
+        try {
+            jarFileSystem = FileSystems.getFileSystem(uri)
+        } catch (FileSystemNotFoundException ignored) {
+            try {
+                jarFileSystem = FileSystems.newFileSystem(uri, [:])
+            } catch (FileSystemAlreadyExistsException ignoredAsWell) {
+                jarFileSystem = FileSystems.getFileSystem(uri)
+            }
+        }
+        return doWithPath(jarFileSystem.provider().getPath(uri))
+    }
+
+    private static ClassLoader resourceClassLoader() {
+        return DefinitionSources.class.classLoader
+    }
+}
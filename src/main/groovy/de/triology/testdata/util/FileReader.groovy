@@ -33,13 +33,12 @@ class FileReader {
 
     private static final Logger LOG = LoggerFactory.getLogger(FileReader.class)
 
-    private String fileName
-
     private FileReader() {}
 
     /**
      * Create a Reader for the given file. It first attempts to find the file as classpath resource and if that
-     * is unsuccessful it tries to find it in the file system under the given name.
+     * is unsuccessful it tries to find it in the file system under the given name. The location the name resolves to
+     * is cached, see {@link DefinitionSources}.
      *
      * @param fileName the file to create a reader for, either as classpath or file system resource
      * @return java.io.Reader
@@ -47,38 +46,6 @@ class FileReader {
      */
     static Reader create(String fileName) throws FileNotFoundException {
         LOG.trace("create reader for file name {}", fileName)
-        return new FileReader(fileName: fileName).createReaderForFile()
-    }
-
-    private InputStreamReader createReaderForFile() {
-        InputStream entityDefinitionInputStream = getInputStreamForEntityDefinition()
-        return createUtf8Reader(entityDefinitionInputStream)
-    }
-
-    private InputStream getInputStreamForEntityDefinition() {
-        def inputStream = getInputStreamFromClasspath() ?: getInputStreamFromFileSystem()
-        if (inputStream != null) {
-            return inputStream
-        }
-        throw new FileNotFoundException("cannot find file '$fileName' in classpath or file system")
-    }
-
-    private InputStream getInputStreamFromClasspath() {
-        LOG.trace("Trying to load resource from classpath {}", fileName)
-        InputStream entityDefinitionInputStream = getClass().getClassLoader().getResourceAsStream(fileName)
-        if (entityDefinitionInputStream != null) {
-            return entityDefinitionInputStream
-        }
-        return null
-    }
-
-    private InputStream getInputStreamFromFileSystem() {
-        LOG.trace("Trying to load resource from filesystem {}", fileName)
-        return new FileInputStream(fileName)
+        return DefinitionSources.load(fileName).createReader()
     }
-
-    private static InputStreamReader createUtf8Reader(InputStream entityDefinitionInputStream) {
-        return new InputStreamReader(entityDefinitionInputStream, "UTF-8")
-    }
-
 }
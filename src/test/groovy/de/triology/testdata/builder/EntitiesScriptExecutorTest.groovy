@@ -94,4 +94,51 @@ class EntitiesScriptExecutorTest extends Specification {
 
         0 * listener._
     }
+
+    def "should tell listeners whether the created entity is nested" () {
+        given: "a groovy script defining a nested entity"
+        def entityDefinition = """
+            import de.triology.testdata.builder.EntitiesScriptExecutorTest.SimpleClass
+            import de.triology.testdata.builder.EntitiesScriptExecutorTest.ComplexClass
+
+            create ComplexClass, "complex", {
+                simple = create SimpleClass, "simple"
+            }
+        """
+
+        and: "a listener recording whether an entity is under construction on each notification"
+        Map<String, Boolean> underConstruction = [:]
+        executor.addEntityBuilderListener({ name, entity ->
+            underConstruction[name] = executor.entityUnderConstruction
+        } as EntityBuilderListener)
+
+        when: "the script is processed"
+        executor.execute(new StringReader(entityDefinition))
+
+        then: "only the nested entity is completed while another entity is under construction"
+        underConstruction == [simple: true, complex: false]
+        !executor.entityUnderConstruction
+    }
+
+    def "should reuse compiled scripts for identical content" () {
+        given: "a script that has already been executed"
+        def entityDefinition = """
+            import de.triology.testdata.builder.EntitiesScriptExecutorTest.SimpleClass
+
+            create SimpleClass, "reused", { prop = "Value" }
+        """
+        executor.execute(new StringReader(entityDefinition))
+        long compilations = EntitiesScriptExecutor.scriptClassStatistics.compilations
+
+        and: "a listener"
+        EntityBuilderListener listener = Mock()
+        EntitiesScriptExecutor anotherExecutor = new EntitiesScriptExecutor().addEntityBuilderListener(listener)
+
+        when: "the script is executed again by another executor"
+        anotherExecutor.execute(new StringReader(entityDefinition))
+
+        then: "the script is not compiled again but the entity is created anew"
+        1 * listener.onEntityCreated("reused", { it.prop == "Value" })
+        EntitiesScriptExecutor.scriptClassStatistics.compilations == compilations
+    }
 }
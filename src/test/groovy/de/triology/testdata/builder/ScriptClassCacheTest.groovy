@@ -0,0 +1,148 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.builder
+
+import org.codehaus.groovy.runtime.InvokerHelper
+import spock.lang.Specification
+
+import java.lang.ref.WeakReference
+import java.util.concurrent.CountDownLatch
+
+class ScriptClassCacheTest extends Specification {
+
+    static final String SCRIPT = "create String, 'aString'"
+    static final String ANOTHER_SCRIPT = "[1, 2].each { create String, \"string\$it\" }"
+
+    ScriptClassCache cache = new ScriptClassCache(1)
+
+    def "should compile each script only once" () {
+        when: "the same script is requested twice"
+        Class<Script> first = cache.getScriptClass(SCRIPT, ScriptClassCache.hash(SCRIPT))
+        Class<Script> second = cache.getScriptClass(SCRIPT, ScriptClassCache.hash(SCRIPT))
+
+        then: "the compiled class is reused"
+        first.is(second)
+        EntityBuilderScript.isAssignableFrom(first)
+        cache.statistics.compilations == 1
+        cache.statistics.cacheHits == 1
+    }
+
+    def "should unload least recently used scripts when full" () {
+        given: "a full cache"
+        Class<Script> evicted = cache.getScriptClass(SCRIPT, ScriptClassCache.hash(SCRIPT))
+
+        when: "another script is requested"
+        Class<Script> cached = cache.getScriptClass(ANOTHER_SCRIPT, ScriptClassCache.hash(ANOTHER_SCRIPT))
+
+        then: "the first script is evicted and its classes are removed from the class loader"
+        cache.statistics.cachedScripts == 1
+        cache.statistics.evictions == 1
+        !cache.classLoader.loadedClasses.contains(evicted)
+        cache.classLoader.loadedClasses.findAll { it.name.startsWith(cached.name) }.size() == 2
+
+        and: "requesting the first script again compiles it anew"
+        !cache.getScriptClass(SCRIPT, ScriptClassCache.hash(SCRIPT)).is(evicted)
+        cache.statistics.compilations == 3
+    }
+
+    def "should release evicted script classes for garbage collection" () {
+        given: "an executed script class that has been evicted by executing another script"
+        WeakReference<Class> evicted = compileAndExecute(SCRIPT)
+        compileAndExecute(ANOTHER_SCRIPT)
+
+        when: "the garbage collector runs"
+        collectGarbageUntilCleared(evicted)
+
+        then: "the evicted class has been collected"
+        evicted.get() == null
+    }
+
+    def "should not leak the classes of scripts that are still being compiled when full" () {
+        given: "a cache whose compilation of the first script blocks"
+        CountDownLatch compilationStarted = new CountDownLatch(1)
+        CountDownLatch proceed = new CountDownLatch(1)
+        ScriptClassCache blockingCache = new ScriptClassCache(1) {
+            @Override
+            protected Class<Script> compile(String scriptText, String contentHash) {
+                if (scriptText == SCRIPT) {
+                    compilationStarted.countDown()
+                    proceed.await()
+                }
+                return super.compile(scriptText, contentHash)
+            }
+        }
+        Thread firstCompilation = Thread.start {
+            blockingCache.getScriptClass(SCRIPT, ScriptClassCache.hash(SCRIPT))
+        }
+        compilationStarted.await()
+
+        when: "another script is compiled while the first one is in flight"
+        Class<Script> cached = blockingCache.getScriptClass(ANOTHER_SCRIPT, ScriptClassCache.hash(ANOTHER_SCRIPT))
+        proceed.countDown()
+        firstCompilation.join()
+
+        then: "one script is evicted after its compilation has completed and none of its classes remain loaded"
+        blockingCache.statistics.cachedScripts == 1
+        blockingCache.statistics.evictions == 1
+        classLoaderOf(blockingCache).loadedClasses.findAll { it.name.startsWith('EntityDefinition_') }
+                .every { it.name.startsWith(cached.name) }
+    }
+
+    def "should not cache scripts that fail to compile" () {
+        when: "an invalid script is requested"
+        cache.getScriptClass("create String, 'unclosed", ScriptClassCache.hash("create String, 'unclosed"))
+
+        then: "the compilation error is passed on and nothing is cached"
+        thrown(org.codehaus.groovy.control.CompilationFailedException)
+        cache.statistics.cachedScripts == 0
+    }
+
+    def "should report class statistics of the JVM" () {
+        expect:
+        cache.statistics.loadedClassCount > 0
+        cache.statistics.metaspaceUsedBytes != 0
+    }
+
+    private static GroovyClassLoader classLoaderOf(ScriptClassCache subclassedCache) {
+        // the private field is not accessible as a property through a subclass
+        def field = ScriptClassCache.getDeclaredField('classLoader')
+        field.accessible = true
+        return field.get(subclassedCache) as GroovyClassLoader
+    }
+
+    private WeakReference<Class> compileAndExecute(String script) {
+        Class<Script> scriptClass = cache.getScriptClass(script, ScriptClassCache.hash(script))
+        Binding binding = new Binding()
+        binding.builder = new EntityBuilder(new EntitiesScriptExecutor())
+        InvokerHelper.createScript(scriptClass, binding).run()
+        return new WeakReference<Class>(scriptClass)
+    }
+
+    private static void collectGarbageUntilCleared(WeakReference<?> reference) {
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc()
+            Thread.sleep(50)
+        }
+    }
+}
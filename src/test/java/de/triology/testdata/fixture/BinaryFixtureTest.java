@@ -0,0 +1,249 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.fixture;
+
+import de.triology.testdata.builder.EntitiesScriptExecutor;
+import de.triology.testdata.builder.EntityBuilderListener;
+import de.triology.testdata.loader.testentities.BasicTestEntity;
+import de.triology.testdata.loader.testentities.Department;
+import de.triology.testdata.loader.testentities.TestEntityWithToManyRelationship;
+import de.triology.testdata.loader.testentities.TestEntityWithToOneRelationship;
+import de.triology.testdata.loader.testentities.User;
+import de.triology.testdata.util.DefinitionSources;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryFixtureTest {
+
+    @Test
+    public void readsEntitiesWithTheirNamesInCreationOrder() throws Exception {
+        EntityCollector written = new EntityCollector();
+        BinaryFixtureWriter writer = new BinaryFixtureWriter();
+        new EntitiesScriptExecutor()
+                .addEntityBuilderListener(written)
+                .addEntityBuilderListener(writer)
+                .execute(DefinitionSources.load("tests/testEntityDefinitions.groovy"));
+
+        EntityCollector read = readBack(writer);
+
+        assertEquals(new ArrayList<String>(written.entities.keySet()), new ArrayList<String>(read.entities.keySet()));
+        BasicTestEntity basicEntity = (BasicTestEntity) read.entities.get("basicEntity");
+        assertEquals("a string value", basicEntity.getStringProperty());
+        assertEquals(Integer.valueOf(5), basicEntity.getIntegerProperty());
+        assertEquals(((BasicTestEntity) written.entities.get("basicEntity")).getDateProperty(),
+                basicEntity.getDateProperty());
+        assertNull(((BasicTestEntity) read.entities.get("secondBasicEntity")).getStringProperty());
+    }
+
+    @Test
+    public void restoresReferencesBetweenEntities() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryFixtureWriter.export(Arrays.asList("tests/testEntityDefinitions.groovy", "tests/itTestData.groovy"), out);
+
+        EntityCollector read = new EntityCollector();
+        int count = new BinaryFixtureReader().addEntityBuilderListener(read)
+                .read(new ByteArrayInputStream(out.toByteArray()));
+
+        assertEquals(read.entities.size(), count);
+        TestEntityWithToOneRelationship referencing =
+                (TestEntityWithToOneRelationship) read.entities.get("entityReferencingPreviouslyCreatedEntity");
+        assertSame(read.entities.get("secondBasicEntity"), referencing.getReferencedEntity());
+        TestEntityWithToManyRelationship withCollection =
+                (TestEntityWithToManyRelationship) read.entities.get("entityWithCollection");
+        assertEquals(Arrays.asList(read.entities.get("createdInPlace"), read.entities.get("basicEntity")),
+                new ArrayList<BasicTestEntity>(withCollection.getToManyRelationship()));
+        User peter = (User) read.entities.get("Peter");
+        assertSame(read.entities.get("lostBoys"), peter.getDepartment());
+        assertSame(peter, ((Department) read.entities.get("lostBoys")).getHead());
+    }
+
+    @Test
+    public void readsValuesOfAllSupportedTypes() throws Exception {
+        ValueHolder holder = new ValueHolder();
+        holder.primitiveInt = 42;
+        holder.character = 'ä';
+        holder.decimal = new BigDecimal("1234.5678");
+        holder.date = LocalDate.of(2017, 3, 1);
+        holder.uuid = UUID.randomUUID();
+        holder.timestamp = new Timestamp(1234567890123L);
+        holder.timestamp.setNanos(123456789);
+        holder.unit = TimeUnit.SECONDS;
+        holder.bytes = new byte[]{1, 2, 3};
+        holder.map = new TreeMap<String, Object>();
+        holder.map.put("list", Collections.unmodifiableList(Arrays.asList(1L, 2L)));
+        holder.map.put("self", holder);
+        holder.embedded = new ValueHolder();
+        holder.embedded.primitiveInt = 7;
+        BinaryFixtureWriter writer = new BinaryFixtureWriter();
+        writer.onEntityCreated("holder", holder);
+
+        ValueHolder read = (ValueHolder) readBack(writer).entities.get("holder");
+
+        assertEquals(42, read.primitiveInt);
+        assertEquals('ä', read.character);
+        assertEquals(holder.decimal, read.decimal);
+        assertEquals(holder.date, read.date);
+        assertEquals(holder.uuid, read.uuid);
+        assertEquals(holder.timestamp, read.timestamp);
+        assertSame(TimeUnit.SECONDS, read.unit);
+        assertArrayEquals(holder.bytes, read.bytes);
+        assertEquals(TreeMap.class, read.map.getClass());
+        assertEquals(Arrays.asList(1L, 2L), read.map.get("list"));
+        assertSame(read, read.map.get("self"));
+        assertEquals(7, read.embedded.primitiveInt);
+        assertNull(read.embedded.map);
+    }
+
+    @Test
+    public void fillsCollectionsAfterTheFieldsOfReferencedEntities() throws Exception {
+        Team team = new Team();
+        Member wendy = new Member("Wendy");
+        Member john = new Member("John");
+        team.members.add(wendy);
+        team.members.add(john);
+        team.membersByName.add(wendy);
+        team.membersByName.add(john);
+        team.roles.put(wendy, "lead");
+        BinaryFixtureWriter writer = new BinaryFixtureWriter();
+        writer.onEntityCreated("team", team);
+        writer.onEntityCreated("Wendy", wendy);
+        writer.onEntityCreated("John", john);
+
+        EntityCollector read = readBack(writer);
+
+        Team readTeam = (Team) read.entities.get("team");
+        Member readWendy = (Member) read.entities.get("Wendy");
+        assertTrue(readTeam.members.contains(readWendy));
+        assertTrue(readTeam.members.contains(read.entities.get("John")));
+        assertEquals(Arrays.asList(read.entities.get("John"), readWendy),
+                new ArrayList<Member>(readTeam.membersByName));
+        assertEquals("lead", readTeam.roles.get(readWendy));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnsupportedValues() throws Exception {
+        ValueHolder holder = new ValueHolder();
+        holder.map = new TreeMap<String, Object>();
+        holder.map.put("unsupported", new Object());
+        BinaryFixtureWriter writer = new BinaryFixtureWriter();
+        writer.onEntityCreated("holder", holder);
+
+        writer.write(new ByteArrayOutputStream());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsStreamsThatAreNoBinaryFixtures() throws Exception {
+        new BinaryFixtureReader().read(new ByteArrayInputStream("create User, 'Peter'".getBytes("UTF-8")));
+    }
+
+    private static EntityCollector readBack(BinaryFixtureWriter writer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.write(out);
+        EntityCollector read = new EntityCollector();
+        new BinaryFixtureReader().addEntityBuilderListener(read).read(new ByteArrayInputStream(out.toByteArray()));
+        return read;
+    }
+
+    private static class EntityCollector implements EntityBuilderListener {
+        private final Map<String, Object> entities = new LinkedHashMap<String, Object>();
+
+        public void onEntityCreated(String name, Object entity) {
+            entities.put(name, entity);
+        }
+    }
+
+    public static class Team {
+        private Set<Member> members = new HashSet<Member>();
+        private SortedSet<Member> membersByName = new TreeSet<Member>(new MemberNameComparator());
+        private Map<Member, String> roles = new HashMap<Member, String>();
+    }
+
+    public static class Member {
+        private String name;
+
+        public Member() {
+        }
+
+        Member(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Member && name.equals(((Member) other).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+    }
+
+    private static class MemberNameComparator implements Comparator<Member> {
+        public int compare(Member first, Member second) {
+            return first.name.compareTo(second.name);
+        }
+    }
+
+    public static class ValueHolder {
+        private int primitiveInt;
+        private char character;
+        private BigDecimal decimal;
+        private LocalDate date;
+        private UUID uuid;
+        private Timestamp timestamp;
+        private TimeUnit unit;
+        private byte[] bytes;
+        private Map<String, Object> map;
+        private ValueHolder embedded;
+        private transient List<String> notStored;
+    }
+}
@@ -33,10 +33,19 @@ import org.mockito.runners.MockitoJUnitRunner;
 import de.triology.testdata.loader.EntityDeleter;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceUnitUtil;
 
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -121,4 +130,97 @@ public class EntityDeleterTest {
         verify(entityManager, never()).remove(entity);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void deletesIndependentEntitiesWithSeparateEntityManagers() throws Exception {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        PersistenceUnitUtil persistenceUnitUtil = mock(PersistenceUnitUtil.class);
+        when(entityManagerFactory.getPersistenceUnitUtil()).thenReturn(persistenceUnitUtil);
+        EntityManager groupEntityManager1 = createTransactionalEntityManagerMock();
+        EntityManager groupEntityManager2 = createTransactionalEntityManagerMock();
+        when(entityManagerFactory.createEntityManager()).thenReturn(groupEntityManager1, groupEntityManager2);
+
+        Object entity1 = new Object();
+        Object entity2 = new Object();
+        when(persistenceUnitUtil.getIdentifier(entity1)).thenReturn(1L);
+        when(persistenceUnitUtil.getIdentifier(entity2)).thenReturn(2L);
+        when(groupEntityManager1.find(Object.class, 1L)).thenReturn(entity1);
+        when(groupEntityManager1.find(Object.class, 2L)).thenReturn(entity2);
+        when(groupEntityManager2.find(Object.class, 1L)).thenReturn(entity1);
+        when(groupEntityManager2.find(Object.class, 2L)).thenReturn(entity2);
+        when(entityManager.contains(entity1)).thenReturn(true);
+        entityDeleter.onEntityCreated("entity1", entity1);
+        entityDeleter.onEntityCreated("entity2", entity2);
+
+        entityDeleter.deleteAllEntitiesInParallel(entityManagerFactory);
+
+        verify(groupEntityManager1, times(1)).remove(any());
+        verify(groupEntityManager2, times(1)).remove(any());
+        verify(groupEntityManager1.getTransaction()).commit();
+        verify(groupEntityManager2.getTransaction()).commit();
+        verify(groupEntityManager1).close();
+        verify(groupEntityManager2).close();
+        verify(entityManager).detach(entity1);
+        verify(entityManager, never()).remove(any());
+    }
+
+    @Test
+    public void keepsEntitiesOfFailedGroupsForRetry() throws Exception {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        PersistenceUnitUtil persistenceUnitUtil = mock(PersistenceUnitUtil.class);
+        when(entityManagerFactory.getPersistenceUnitUtil()).thenReturn(persistenceUnitUtil);
+        EntityManager failingEntityManager = createTransactionalEntityManagerMock();
+        EntityTransaction failingTransaction = failingEntityManager.getTransaction();
+        doThrow(new RuntimeException("commit failed")).when(failingTransaction).commit();
+        EntityManager succeedingEntityManager = createTransactionalEntityManagerMock();
+        EntityManager retryEntityManager = createTransactionalEntityManagerMock();
+        when(entityManagerFactory.createEntityManager())
+                .thenReturn(failingEntityManager, succeedingEntityManager, retryEntityManager);
+
+        Object entity1 = new Object();
+        Object entity2 = new Object();
+        when(persistenceUnitUtil.getIdentifier(entity1)).thenReturn(1L);
+        when(persistenceUnitUtil.getIdentifier(entity2)).thenReturn(2L);
+        for (EntityManager groupEntityManager : Arrays.asList(
+                failingEntityManager, succeedingEntityManager, retryEntityManager)) {
+            when(groupEntityManager.find(Object.class, 1L)).thenReturn(entity1);
+            when(groupEntityManager.find(Object.class, 2L)).thenReturn(entity2);
+        }
+        entityDeleter.onEntityCreated("entity1", entity1);
+        entityDeleter.onEntityCreated("entity2", entity2);
+
+        try {
+            entityDeleter.deleteAllEntitiesInParallel(entityManagerFactory);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertEquals("commit failed", expected.getCause().getMessage());
+        }
+        entityDeleter.deleteAllEntitiesInParallel(entityManagerFactory);
+
+        verify(retryEntityManager, times(1)).remove(any());
+        verify(retryEntityManager.getTransaction()).commit();
+        verify(entityManagerFactory, times(3)).createEntityManager();
+    }
+
+    @Test
+    public void keepsAllEntitiesIfParallelDeletionFailsBeforeDeletingGroups() throws Exception {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        when(entityManagerFactory.getMetamodel()).thenThrow(new IllegalStateException("factory closed"));
+        entityDeleter.onEntityCreated("entity1", new Object());
+        entityDeleter.onEntityCreated("entity2", new Object());
+
+        try {
+            entityDeleter.deleteAllEntitiesInParallel(entityManagerFactory);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertEquals("factory closed", expected.getMessage());
+        }
+
+        assertEquals(2, entityDeleter.getEntityCount());
+    }
+
+    private EntityManager createTransactionalEntityManagerMock() {
+        EntityManager entityManagerMock = mock(EntityManager.class);
+        when(entityManagerMock.getTransaction()).thenReturn(mock(EntityTransaction.class));
+        return entityManagerMock;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader;
+
+import org.junit.Test;
+
+import de.triology.testdata.loader.testentities.Department;
+import de.triology.testdata.loader.testentities.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class InsertPlanTest {
+
+    private final EntityDependencies dependencies = new EntityDependencies(null) {
+        @Override
+        public Collection<Object> getReferencedEntities(Object entity) {
+            List<Object> referenced = new ArrayList<Object>();
+            if (entity instanceof User && ((User) entity).getDepartment() != null) {
+                referenced.add(((User) entity).getDepartment());
+            }
+            if (entity instanceof Department && ((Department) entity).getHead() != null) {
+                referenced.add(((Department) entity).getHead());
+            }
+            return referenced;
+        }
+    };
+
+    @Test
+    public void ordersEntitiesAfterTheEntitiesTheyReference() throws Exception {
+        Department department = new Department();
+        User user = new User();
+        user.setDepartment(department);
+
+        InsertPlan plan = new InsertPlan(Arrays.<Object>asList(user, department), dependencies);
+
+        assertEquals(Arrays.<Object>asList(department, user), plan.getOrderedEntities());
+        assertTrue(plan.getCycles().isEmpty());
+    }
+
+    @Test
+    public void groupsIndependentEntitiesByClass() throws Exception {
+        User user1 = new User();
+        Department department1 = new Department();
+        User user2 = new User();
+        Department department2 = new Department();
+
+        InsertPlan plan = new InsertPlan(Arrays.<Object>asList(user1, department1, user2, department2), dependencies);
+
+        assertEquals(Arrays.<Object>asList(user1, user2, department1, department2), plan.getOrderedEntities());
+    }
+
+    @Test
+    public void reportsCyclesAndAppendsTheirEntitiesInCreationOrder() throws Exception {
+        User head = new User();
+        Department department = new Department();
+        head.setDepartment(department);
+        department.setHead(head);
+        User member = new User();
+        member.setDepartment(department);
+        Department independent = new Department();
+
+        InsertPlan plan = new InsertPlan(Arrays.<Object>asList(department, head, member, independent), dependencies);
+
+        assertEquals(Arrays.<Object>asList(independent, department, head, member), plan.getOrderedEntities());
+        assertEquals(1, plan.getCycles().size());
+        assertEquals(2, plan.getCycles().get(0).size());
+        assertTrue(plan.getCycles().get(0).containsAll(Arrays.<Object>asList(department, head)));
+    }
+
+    @Test
+    public void ignoresSelfReferencesAndReferencesToUnplannedEntities() throws Exception {
+        final Object selfReferencing = new Object();
+        EntityDependencies selfReferences = new EntityDependencies(null) {
+            @Override
+            public Collection<Object> getReferencedEntities(Object entity) {
+                return Arrays.<Object>asList(entity, new Object());
+            }
+        };
+
+        InsertPlan plan = new InsertPlan(Collections.singletonList(selfReferencing), selfReferences);
+
+        assertEquals(Collections.singletonList(selfReferencing), plan.getOrderedEntities());
+        assertTrue(plan.getCycles().isEmpty());
+    }
+}
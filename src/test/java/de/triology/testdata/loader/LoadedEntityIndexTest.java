@@ -0,0 +1,96 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LoadedEntityIndexTest {
+
+    private LoadedEntityIndex index = new LoadedEntityIndex();
+
+    @Test
+    public void readsIndexedAttributesFromFieldsWithoutCallingGetters() throws Exception {
+        index.createIndex(Person.class, "first");
+        Person person = new Person(null);
+
+        index.add(person);
+
+        assertSame(person, index.find(Person.class, "first", null).get(0));
+    }
+
+    @Test
+    public void findsEntitiesBySuperclassAttribute() throws Exception {
+        Person person = new Employee("Peter");
+        index.add(person);
+
+        List<Person> found = index.find(Person.class, "first", "Peter");
+
+        assertEquals(1, found.size());
+        assertSame(person, found.get(0));
+    }
+
+    @Test
+    public void leavesEntitiesWithoutAttributeOutOfExistingIndex() throws Exception {
+        index.createIndex(Object.class, "first");
+
+        index.add("no person");
+
+        assertTrue(index.find(Object.class, "first", null).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsToCreateIndexIfAddedEntityDoesNotHaveAttribute() throws Exception {
+        index.add(new Person("Peter"));
+
+        index.createIndex(Person.class, "last");
+    }
+
+    private static class Person {
+        private final String first;
+
+        Person(String first) {
+            this.first = first;
+        }
+
+        public String getFirst() {
+            throw new UnsupportedOperationException("getters must not be called");
+        }
+
+        public String getDisplayName() {
+            return first.toUpperCase();
+        }
+    }
+
+    private static class Employee extends Person {
+        Employee(String first) {
+            super(first);
+        }
+    }
+}
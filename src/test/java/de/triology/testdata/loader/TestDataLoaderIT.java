@@ -27,6 +27,7 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import de.triology.testdata.fixture.BinaryFixtureWriter;
 import de.triology.testdata.loader.TestDataLoader;
 import de.triology.testdata.loader.testentities.Department;
 import de.triology.testdata.loader.testentities.User;
@@ -34,19 +35,28 @@ import de.triology.testdata.loader.testentities.User;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TestDataLoaderIT {
 
+    private EntityManagerFactory entityManagerFactory;
     private EntityManager entityManager;
     private TestDataLoader testDataLoader;
 
     @Before
     public void setUp() throws Exception {
-        EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory("testdataloader");
+        entityManagerFactory = Persistence.createEntityManagerFactory("testdataloader");
         entityManager = entityManagerFactory.createEntityManager();
         testDataLoader = new TestDataLoader(entityManager);
         testDataLoader.loadTestData(Collections.singletonList("tests/itTestData.groovy"));
@@ -93,4 +103,89 @@ public class TestDataLoaderIT {
         Department lostBoys = entityManager.find(Department.class, 999L);
         assertSame(peter, lostBoys.getHead());
     }
+
+    @Test
+    public void insertsEntitiesInDependencyOrderInDeferredMode() throws Exception {
+        testDataLoader.clearEntityCacheAndDatabase();
+        testDataLoader.setPersistenceMode(TestDataLoader.PersistenceMode.DEFERRED);
+        testDataLoader.loadTestData(Collections.singletonList("tests/itTestData.groovy"));
+
+        User tinker = entityManager.find(User.class, 555L);
+        assertEquals("The Lost Boys", tinker.getDepartment().getName());
+        assertEquals(1, testDataLoader.getLastLoadReport().getDependencyCycles().size());
+        assertEquals(new HashSet<String>(Arrays.asList("Peter", "lostBoys")),
+                new HashSet<String>(testDataLoader.getLastLoadReport().getDependencyCycles().get(0)));
+    }
+
+    @Test
+    public void deletesIndependentEntitiesInParallel() throws Exception {
+        testDataLoader.clearEntityCacheAndDatabase(entityManagerFactory);
+
+        assertEquals(0L, entityManager.createQuery("select count(u) from User u").getSingleResult());
+        assertEquals(0L, entityManager.createQuery("select count(d) from Department d").getSingleResult());
+    }
+
+    @Test
+    public void loadsBinaryFixtures() throws Exception {
+        File fixture = File.createTempFile("itTestData", ".tdlf");
+        fixture.deleteOnExit();
+        OutputStream out = new FileOutputStream(fixture);
+        try {
+            BinaryFixtureWriter.export(Collections.singletonList("tests/itTestData.groovy"), out);
+        } finally {
+            out.close();
+        }
+        testDataLoader.clearEntityCacheAndDatabase();
+
+        testDataLoader.loadBinaryFixtures(Collections.singletonList(fixture.getAbsolutePath()));
+
+        User tinker = entityManager.find(User.class, 555L);
+        assertEquals("The Lost Boys", tinker.getDepartment().getName());
+        assertSame(testDataLoader.getEntityByName("Peter", User.class), entityManager.find(User.class, 123L));
+        assertEquals(4, testDataLoader.getLastLoadReport().getEntityCount());
+    }
+
+    @Test
+    public void resumesChunkedLoadWithManagedEntitiesCommittedBeforeTheCheckpoint() throws Exception {
+        testDataLoader.clearEntityCacheAndDatabase();
+        User conflictingTinker = new User();
+        conflictingTinker.setId(555L);
+        entityManager.getTransaction().begin();
+        entityManager.persist(conflictingTinker);
+        entityManager.getTransaction().commit();
+        entityManager.clear();
+
+        LoadCheckpoint checkpoint = null;
+        try {
+            testDataLoader.loadTestData(Collections.singletonList("tests/itTestData.groovy"), 1);
+            fail("loading a user with an existing ID succeeded");
+        } catch (TestDataLoadException e) {
+            checkpoint = e.getCheckpoint();
+        }
+        assertEquals("Peter", checkpoint.getEntityName());
+        entityManager.getTransaction().begin();
+        entityManager.createQuery("delete from User u where u.id = 555").executeUpdate();
+        entityManager.getTransaction().commit();
+
+        testDataLoader.loadTestData(Collections.singletonList("tests/itTestData.groovy"), 1, checkpoint);
+
+        User peter = testDataLoader.getEntityByName("Peter", User.class);
+        assertTrue(entityManager.contains(peter));
+        assertSame(peter, entityManager.find(User.class, 123L));
+        assertSame(peter.getDepartment(), testDataLoader.getEntityByName("Tinker", User.class).getDepartment());
+        assertEquals(3L, entityManager.createQuery("select count(u) from User u").getSingleResult());
+    }
+
+    @Test
+    public void detachesCommittedEntitiesOfChunkedLoads() throws Exception {
+        testDataLoader.clearEntityCacheAndDatabase();
+        testDataLoader.setDetachCommittedEntities(true);
+
+        testDataLoader.loadTestData(Collections.singletonList("tests/itTestData.groovy"), 1);
+
+        User tinker = testDataLoader.getEntityByName("Tinker", User.class);
+        assertFalse(entityManager.contains(tinker));
+        assertEquals("The Lost Boys", entityManager.find(User.class, 555L).getDepartment().getName());
+        assertEquals(3L, entityManager.createQuery("select count(u) from User u").getSingleResult());
+    }
 }
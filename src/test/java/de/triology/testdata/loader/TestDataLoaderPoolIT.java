@@ -0,0 +1,160 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.loader;
+
+import de.triology.testdata.loader.testentities.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TestDataLoaderPoolIT {
+
+    private TestDataLoaderPool pool;
+
+    @Before
+    public void setUp() throws Exception {
+        pool = TestDataLoaderPool.forPersistenceUnit("testdataloader", "jdbc:h2:mem:%s;DB_CLOSE_DELAY=-1", 2,
+                Collections.singletonList("tests/itTestData.groovy"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void leasesIsolatedDatabasesWithBaseline() throws Exception {
+        PooledDatabase first = pool.lease();
+        PooledDatabase second = pool.lease();
+
+        assertNotSame(first.getEntityManagerFactory(), second.getEntityManagerFactory());
+        assertEquals("Pan", first.getEntityManager().find(User.class, 123L).getLastName());
+        assertEquals("Pan", second.getTestDataLoader().getEntityByName("Peter", User.class).getLastName());
+
+        first.getTestDataLoader().loadTestData(Collections.singletonList("tests/additionalUser.groovy"));
+
+        assertEquals(4L, countUsers(first));
+        assertEquals(3L, countUsers(second));
+        first.close();
+        second.close();
+    }
+
+    @Test
+    public void deletesEntitiesLoadedDuringLeaseOnRelease() throws Exception {
+        PooledDatabase database = pool.lease();
+        database.getTestDataLoader().loadTestData(Collections.singletonList("tests/additionalUser.groovy"));
+        database.close();
+
+        PooledDatabase next = leaseDatabaseNamed(database.getName());
+
+        assertSame(database.getEntityManagerFactory(), next.getEntityManagerFactory());
+        assertEquals(3L, countUsers(next));
+        assertEquals("Pan", next.getTestDataLoader().getEntityByName("Peter", User.class).getLastName());
+        try {
+            next.getTestDataLoader().getEntityByName("Wendy", User.class);
+            fail("entity loaded during previous lease is still available");
+        } catch (NoSuchElementException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void recreatesInvalidatedDatabases() throws Exception {
+        PooledDatabase database = pool.lease();
+        EntityManagerFactory entityManagerFactory = database.getEntityManagerFactory();
+        database.getEntityManager().getTransaction().begin();
+        database.getTestDataLoader().getEntityByName("Peter", User.class).setLastName("Hook");
+        database.getEntityManager().getTransaction().commit();
+        database.invalidate();
+        database.close();
+
+        PooledDatabase next = leaseDatabaseNamed(database.getName());
+
+        assertNotSame(entityManagerFactory, next.getEntityManagerFactory());
+        assertEquals("Pan", next.getEntityManager().find(User.class, 123L).getLastName());
+        assertEquals(3L, countUsers(next));
+    }
+
+    @Test
+    public void dropsRecreatedDatabasesAndRecreatesThemUnderNewNames() throws Exception {
+        PooledDatabase database = pool.lease();
+        String name = database.getName();
+        database.invalidate();
+        database.close();
+
+        assertNotEquals(name, database.getName());
+        assertEquals(0L, countTablesOfH2MemoryDatabase(name));
+        assertEquals(3L, countUsers(database));
+    }
+
+    @Test
+    public void dropsDatabasesOnClose() throws Exception {
+        PooledDatabase database = pool.lease();
+        String name = database.getName();
+
+        pool.close();
+
+        assertEquals(0L, countTablesOfH2MemoryDatabase(name));
+    }
+
+    private PooledDatabase leaseDatabaseNamed(String name) throws InterruptedException {
+        PooledDatabase other = pool.lease();
+        PooledDatabase database = other.getName().equals(name) ? other : pool.lease();
+        if (database != other) {
+            other.close();
+        }
+        return database;
+    }
+
+    private static long countTablesOfH2MemoryDatabase(String name) throws SQLException {
+        // opens a new, empty in-memory database if the database has been dropped
+        Connection connection = DriverManager.getConnection("jdbc:h2:mem:" + name, "sa", "");
+        try {
+            ResultSet resultSet = connection.createStatement().executeQuery(
+                    "select count(*) from information_schema.tables where table_schema = 'PUBLIC'");
+            resultSet.next();
+            return resultSet.getLong(1);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static long countUsers(PooledDatabase database) {
+        return (Long) database.getEntityManager().createQuery("select count(u) from User u").getSingleResult();
+    }
+}
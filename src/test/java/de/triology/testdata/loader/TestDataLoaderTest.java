@@ -23,22 +23,45 @@
  */
 package de.triology.testdata.loader;
 
+import de.triology.testdata.builder.EntitiesScriptExecutor;
 import de.triology.testdata.loader.TestDataLoader;
 import de.triology.testdata.loader.testentities.AnotherTestEntity;
+import de.triology.testdata.loader.testentities.BaseClass;
 import de.triology.testdata.loader.testentities.BasicTestEntity;
+import de.triology.testdata.loader.testentities.InheritingEntity;
+import de.triology.testdata.loader.testentities.TestEntityWithToOneRelationship;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import org.mockito.InOrder;
+
+import javax.persistence.CacheStoreMode;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.FlushModeType;
+import javax.persistence.PersistenceUnitUtil;
+import java.io.FileNotFoundException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -77,6 +100,97 @@ public class TestDataLoaderTest {
         loadDefaultTestDataAndCallGetEntityByName("basicEntity", AnotherTestEntity.class);
     }
 
+    @Test
+    public void loadsAllDefinitionFilesMatchingAGlob() throws Exception {
+        testDataLoader.loadTestData(Collections.singletonList("tests/test*Definitions.groovy"));
+
+        assertEquals(Collections.singletonList("tests/testEntityDefinitions.groovy"),
+                testDataLoader.getLastLoadReport().getEntityDefinitionFiles());
+        assertNotNull(testDataLoader.getEntityByName("basicEntity", BasicTestEntity.class));
+    }
+
+    @Test
+    public void getsCreatedEntityByNameOfSuperclass() throws Exception {
+        testDataLoader.loadTestData(Collections.singletonList("tests/mappedSuperclass.groovy"));
+        BaseClass entity = testDataLoader.getEntityByName("inherited", BaseClass.class);
+        assertTrue(entity instanceof InheritingEntity);
+    }
+
+    @Test
+    public void getsLoadedEntitiesByType() throws Exception {
+        testDataLoader.loadTestData(Arrays.asList("tests/testEntityDefinitions.groovy", "tests/mappedSuperclass.groovy"));
+
+        assertEquals(5, testDataLoader.getEntitiesByType(BasicTestEntity.class).size());
+        assertEquals(1, testDataLoader.getEntitiesByType(BaseClass.class).size());
+        assertEquals(13, testDataLoader.getEntitiesByType(Object.class).size());
+        assertTrue(testDataLoader.getEntitiesByType(String.class).isEmpty());
+    }
+
+    @Test
+    public void findsLoadedEntitiesByAttribute() throws Exception {
+        testDataLoader.indexAttribute(BasicTestEntity.class, "integerProperty");
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+
+        List<BasicTestEntity> found = testDataLoader.findLoaded(BasicTestEntity.class, "integerProperty", 5);
+        assertEquals(2, found.size());
+        assertSame(testDataLoader.getEntityByName("basicEntity", BasicTestEntity.class), found.get(0));
+
+        BasicTestEntity secondBasicEntity = testDataLoader.getEntityByName("secondBasicEntity", BasicTestEntity.class);
+        List<TestEntityWithToOneRelationship> referencing = testDataLoader.findLoaded(
+                TestEntityWithToOneRelationship.class, "referencedEntity", secondBasicEntity);
+        assertEquals(1, referencing.size());
+        assertSame(testDataLoader.getEntityByName("entityReferencingPreviouslyCreatedEntity",
+                TestEntityWithToOneRelationship.class), referencing.get(0));
+    }
+
+    @Test
+    public void findsLoadedEntitiesByAttributeValuesTheyWereCreatedWithIfIndexedBeforeLoading() throws Exception {
+        testDataLoader.indexAttribute(BasicTestEntity.class, "integerProperty");
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+        BasicTestEntity basicEntity = testDataLoader.getEntityByName("basicEntity", BasicTestEntity.class);
+        basicEntity.setIntegerProperty(6);
+
+        assertSame(basicEntity, testDataLoader.findLoaded(BasicTestEntity.class, "integerProperty", 5).get(0));
+        assertTrue(testDataLoader.findLoaded(BasicTestEntity.class, "integerProperty", 6).isEmpty());
+    }
+
+    @Test
+    public void findsLoadedEntitiesByCurrentAttributeValuesIfIndexedOnFirstUse() throws Exception {
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+        BasicTestEntity basicEntity = testDataLoader.getEntityByName("basicEntity", BasicTestEntity.class);
+        basicEntity.setIntegerProperty(6);
+
+        assertSame(basicEntity, testDataLoader.findLoaded(BasicTestEntity.class, "integerProperty", 6).get(0));
+        assertFalse(testDataLoader.findLoaded(BasicTestEntity.class, "integerProperty", 5).contains(basicEntity));
+    }
+
+    @Test
+    public void keepsDeclaredIndexWhenEntityCacheIsCleared() throws Exception {
+        testDataLoader.indexAttribute(BasicTestEntity.class, "integerProperty");
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+        testDataLoader.clearEntityCache();
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+        BasicTestEntity basicEntity = testDataLoader.getEntityByName("basicEntity", BasicTestEntity.class);
+        basicEntity.setIntegerProperty(6);
+
+        assertSame(basicEntity, testDataLoader.findLoaded(BasicTestEntity.class, "integerProperty", 5).get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void findLoadedFailsForUnknownAttribute() throws Exception {
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+        testDataLoader.findLoaded(BasicTestEntity.class, "notExisting", 5);
+    }
+
+    @Test
+    public void clearsIndexOfLoadedEntities() throws Exception {
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+        testDataLoader.clearEntityCache();
+
+        assertTrue(testDataLoader.getEntitiesByType(Object.class).isEmpty());
+        assertTrue(testDataLoader.findLoaded(BasicTestEntity.class, "integerProperty", 5).isEmpty());
+    }
+
     private <T> T loadDefaultTestDataAndCallGetEntityByName(String entityName, Class<T> entityClass) {
         testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
         return testDataLoader.getEntityByName(entityName, entityClass);
@@ -130,4 +244,231 @@ public class TestDataLoaderTest {
     public void transactionTypeMustNotBeNull() throws Exception {
         new TestDataLoader(entityManagerMock, null);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void commitsAfterEachChunkOfTopLevelEntities() throws Exception {
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"), 4);
+
+        EntityTransaction transaction = entityManagerMock.getTransaction();
+        verify(transaction, times(3)).begin();
+        verify(transaction, times(3)).commit();
+        verify(entityManagerMock, times(12)).persist(any());
+    }
+
+    @Test
+    public void throwsExceptionWithLastCommittedCheckpointWhenChunkedLoadFails() throws Exception {
+        try {
+            testDataLoader.loadTestData(Arrays.asList("tests/testEntityDefinitions.groovy",
+                    "tests/failingBecauseOfMissingReferencedEntity.groovy"), 4);
+            fail("expected TestDataLoadException");
+        } catch (TestDataLoadException e) {
+            LoadCheckpoint checkpoint = e.getCheckpoint();
+            assertEquals("tests/testEntityDefinitions.groovy", checkpoint.getFileName());
+            assertEquals(9, checkpoint.getEntityOrdinal());
+            assertEquals("deeplyNestedEntities", checkpoint.getEntityName());
+        }
+    }
+
+    @Test
+    public void resumesChunkedLoadAfterCheckpoint() throws Exception {
+        PersistenceUnitUtil persistenceUnitUtil = mockPersistenceUnitUtil();
+        when(persistenceUnitUtil.getIdentifier(any())).thenReturn(1L);
+        BasicTestEntity committed = new BasicTestEntity();
+        doReturn(committed).when(entityManagerMock).find(BasicTestEntity.class, 1L);
+        doReturn(new AnotherTestEntity()).when(entityManagerMock).find(AnotherTestEntity.class, 1L);
+        doReturn(new TestEntityWithToOneRelationship())
+                .when(entityManagerMock).find(TestEntityWithToOneRelationship.class, 1L);
+
+        LoadCheckpoint checkpoint = new LoadCheckpoint("tests/testEntityDefinitions.groovy", 9, "deeplyNestedEntities");
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"), 4, checkpoint);
+
+        verify(entityManagerMock, times(3)).persist(any());
+        assertSame(committed, testDataLoader.getEntityByName("basicEntity", BasicTestEntity.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesToResumeIfEntitiesBeforeTheCheckpointHaveNoId() throws Exception {
+        mockPersistenceUnitUtil();
+        LoadCheckpoint checkpoint = new LoadCheckpoint("tests/testEntityDefinitions.groovy", 9, "deeplyNestedEntities");
+        try {
+            testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"), 4, checkpoint);
+        } catch (TestDataLoadException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    @Test
+    public void detachesCommittedEntitiesIfRequested() throws Exception {
+        when(entityManagerMock.contains(any())).thenReturn(true);
+        testDataLoader.setDetachCommittedEntities(true);
+
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"), 4);
+
+        verify(entityManagerMock, times(12)).detach(any());
+    }
+
+    private PersistenceUnitUtil mockPersistenceUnitUtil() {
+        EntityManagerFactory entityManagerFactory = mock(EntityManagerFactory.class);
+        PersistenceUnitUtil persistenceUnitUtil = mock(PersistenceUnitUtil.class);
+        when(entityManagerMock.getEntityManagerFactory()).thenReturn(entityManagerFactory);
+        when(entityManagerFactory.getPersistenceUnitUtil()).thenReturn(persistenceUnitUtil);
+        return persistenceUnitUtil;
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void refusesToResumeFromCheckpointNotMatchingTheDefinitionFile() throws Exception {
+        when(mockPersistenceUnitUtil().getIdentifier(any())).thenReturn(1L);
+        LoadCheckpoint checkpoint = new LoadCheckpoint("tests/testEntityDefinitions.groovy", 9, "anotherEntity");
+        try {
+            testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"), 4, checkpoint);
+        } catch (TestDataLoadException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void chunkedLoadingRequiresResourceLocalTransactions() throws Exception {
+        //noinspection unchecked
+        when(entityManagerMock.getTransaction()).thenThrow(IllegalStateException.class);
+        testDataLoader = new TestDataLoader(entityManagerMock, TestDataLoader.TransactionType.JTA);
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"), 4);
+    }
+
+    @Test
+    public void appliesLoadProfileForTheDurationOfALoad() throws Exception {
+        when(entityManagerMock.getFlushMode()).thenReturn(FlushModeType.AUTO);
+        testDataLoader.setLoadProfile(LoadProfile.bulkInsert());
+
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+
+        InOrder inOrder = inOrder(entityManagerMock);
+        inOrder.verify(entityManagerMock).setFlushMode(FlushModeType.COMMIT);
+        inOrder.verify(entityManagerMock).setProperty("javax.persistence.cache.storeMode", CacheStoreMode.BYPASS);
+        inOrder.verify(entityManagerMock, times(12)).persist(any());
+        inOrder.verify(entityManagerMock).setFlushMode(FlushModeType.AUTO);
+        inOrder.verify(entityManagerMock).setProperty("javax.persistence.cache.storeMode", CacheStoreMode.USE);
+    }
+
+    @Test
+    public void restoresOnlyPropertiesThatWereSetBeforeTheLoad() throws Exception {
+        when(entityManagerMock.getProperties()).thenReturn(Collections.<String, Object>singletonMap("set", "before"));
+        testDataLoader.setLoadProfile(new LoadProfile("custom").property("set", "during").property("unset", "during"));
+
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+
+        verify(entityManagerMock).setProperty("set", "before");
+        verify(entityManagerMock, times(1)).setProperty("unset", "during");
+        verify(entityManagerMock, times(3)).setProperty(anyString(), any());
+    }
+
+    @Test
+    public void reportsLoads() throws Exception {
+        assertNull(testDataLoader.getLastLoadReport());
+        LoadProfile loadProfile = LoadProfile.bulkInsert();
+        testDataLoader.setLoadProfile(loadProfile);
+
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+
+        LoadReport report = testDataLoader.getLastLoadReport();
+        assertEquals(12, report.getEntityCount());
+        assertSame(loadProfile, report.getLoadProfile());
+        assertEquals(Collections.singletonList("tests/testEntityDefinitions.groovy"), report.getEntityDefinitionFiles());
+        assertTrue(report.isSuccessful());
+    }
+
+    @Test
+    public void reportsFailedLoads() throws Exception {
+        testDataLoader.loadTestData(Collections.singletonList("tests/failingBecauseOfMissingReferencedEntity.groovy"));
+
+        assertFalse(testDataLoader.getLastLoadReport().isSuccessful());
+    }
+
+    @Test
+    public void persistsAndDeletesAllEntitiesInDeferredMode() throws Exception {
+        when(entityManagerMock.merge(any())).then(returnsFirstArg());
+        testDataLoader.setPersistenceMode(TestDataLoader.PersistenceMode.DEFERRED);
+
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+        verify(entityManagerMock, times(12)).persist(any());
+        assertNotNull(testDataLoader.getEntityByName("basicEntity", BasicTestEntity.class));
+
+        testDataLoader.clearEntityCacheAndDatabase();
+        verify(entityManagerMock, times(12)).remove(any());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void chunkedLoadingRequiresImmediatePersistence() throws Exception {
+        testDataLoader.setPersistenceMode(TestDataLoader.PersistenceMode.DEFERRED);
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"), 4);
+    }
+
+    @Test
+    public void prefetchCompilesDefinitionFilesInTheBackground() throws Exception {
+        EntitiesScriptExecutor.clearScriptClassCache();
+
+        List<String> prefetched =
+                TestDataLoader.prefetch(Collections.singletonList("tests/test*Definitions.groovy")).get();
+        long compilations = EntitiesScriptExecutor.getScriptClassStatistics().getCompilations();
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+
+        assertEquals(Collections.singletonList("tests/testEntityDefinitions.groovy"), prefetched);
+        assertEquals(compilations, EntitiesScriptExecutor.getScriptClassStatistics().getCompilations());
+    }
+
+    @Test
+    public void waitsForBackgroundLoadOfTheSameFilesInsteadOfLoadingAgain() throws Exception {
+        List<String> files = Collections.singletonList("tests/testEntityDefinitions.groovy");
+
+        Future<LoadReport> backgroundLoad = testDataLoader.loadTestDataInBackground(files);
+        testDataLoader.loadTestData(files);
+
+        assertTrue(backgroundLoad.isDone());
+        assertSame(backgroundLoad.get(), testDataLoader.getLastLoadReport());
+        assertNotNull(testDataLoader.getEntityByName("basicEntity", BasicTestEntity.class));
+        verify(entityManagerMock, times(12)).persist(any());
+    }
+
+    @Test
+    public void clearsEntityCacheOnlyAfterBackgroundLoadIsComplete() throws Exception {
+        Future<LoadReport> backgroundLoad = testDataLoader.loadTestDataInBackground(
+                Collections.singletonList("tests/testEntityDefinitions.groovy"));
+        testDataLoader.clearEntityCache();
+
+        assertTrue(backgroundLoad.isDone());
+        assertTrue(testDataLoader.getEntitiesByType(Object.class).isEmpty());
+    }
+
+    @Test
+    public void reportsFailedBackgroundLoadWithoutThrowingFromOtherMethods() throws Exception {
+        List<String> files = Collections.singletonList("/not/existing/*.groovy");
+
+        Future<LoadReport> backgroundLoad = testDataLoader.loadTestDataInBackground(files);
+        testDataLoader.clear();
+
+        assertTrue(backgroundLoad.isDone());
+        assertFalse(testDataLoader.getLastLoadReport().isSuccessful());
+        assertFalse(testDataLoader.getLastLoadReport().isSuccessful());
+        assertTrue(testDataLoader.getEntitiesByType(BasicTestEntity.class).isEmpty());
+        try {
+            backgroundLoad.get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException expected) {
+            assertTrue(expected.getCause() instanceof FileNotFoundException);
+        }
+    }
+
+    @Test
+    public void rethrowsFailureOfBackgroundLoadWhenLoadingTheSameFiles() throws Exception {
+        List<String> files = Collections.singletonList("/not/existing/*.groovy");
+        testDataLoader.loadTestDataInBackground(files);
+
+        try {
+            testDataLoader.loadTestData(files);
+            fail("expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof FileNotFoundException);
+        }
+        testDataLoader.loadTestData(Collections.singletonList("tests/testEntityDefinitions.groovy"));
+        assertTrue(testDataLoader.getLastLoadReport().isSuccessful());
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * MIT License
+ *
+ * Copyright (c) 2016 TRIOLOGY GmbH
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package de.triology.testdata.util;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DefinitionSourcesTest {
+
+    @After
+    public void tearDown() throws Exception {
+        DefinitionSources.clearCache();
+    }
+
+    @Test
+    public void keepsNamesOfSingleFiles() throws Exception {
+        assertEquals(Collections.singletonList("tests/itTestData.groovy"),
+                DefinitionSources.expand("tests/itTestData.groovy"));
+    }
+
+    @Test
+    public void expandsClasspathDirectoriesToContainedDefinitionFiles() throws Exception {
+        List<String> files = DefinitionSources.expand("tests");
+
+        assertTrue(files.contains("tests/itTestData.groovy"));
+        assertTrue(files.contains("tests/testEntityDefinitions.groovy"));
+        assertFalse(files.contains("tests/FileReaderTestFile"));
+    }
+
+    @Test
+    public void expandsClasspathGlobs() throws Exception {
+        assertEquals(Arrays.asList("tests/failingBecauseOfMissingReferencedEntity.groovy",
+                "tests/failingBecauseOfReusedName.groovy"), DefinitionSources.expand("tests/failing*.groovy"));
+    }
+
+    @Test
+    public void expandsGlobsToDefinitionFilesOnly() throws Exception {
+        List<String> files = DefinitionSources.expand("tests/*");
+
+        assertTrue(files.contains("tests/itTestData.groovy"));
+        assertFalse(files.contains("tests/FileReaderTestFile"));
+    }
+
+    @Test
+    public void keepsNamesOfExistingFilesContainingGlobCharacters() throws Exception {
+        File directory = createTempDirectory();
+        File file = new File(directory, "users[1].groovy");
+        write(file, "// users");
+
+        assertEquals(Collections.singletonList(file.getPath()), DefinitionSources.expand(file.getPath()));
+        assertEquals("// users", DefinitionSources.load(file.getPath()).getText());
+    }
+
+    @Test
+    public void expandsFileSystemGlobs() throws Exception {
+        assertEquals(Arrays.asList("src/test/resources/tests/failingBecauseOfMissingReferencedEntity.groovy",
+                "src/test/resources/tests/failingBecauseOfReusedName.groovy"),
+                DefinitionSources.expand("src/test/resources/tests/failing*.groovy"));
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void failsToExpandNotExistingDirectory() throws Exception {
+        DefinitionSources.expand("/not/existing/*.groovy");
+    }
+
+    @Test(expected = FileNotFoundException.class)
+    public void failsToLoadNotExistingFile() throws Exception {
+        DefinitionSources.load("/not/existing");
+    }
+
+    @Test
+    public void hashesContent() throws Exception {
+        DefinitionSource fromClasspath = DefinitionSources.load("tests/FileReaderTestFile");
+        DefinitionSource fromFileSystem = DefinitionSources.load("src/test/resources/tests/FileReaderTestFile");
+        DefinitionSource other = DefinitionSources.load("tests/itTestData.groovy");
+
+        assertEquals(64, fromClasspath.getContentHash().length());
+        assertEquals(fromClasspath.getContentHash(), fromFileSystem.getContentHash());
+        assertNotEquals(fromClasspath.getContentHash(), other.getContentHash());
+        assertNotEquals(fromClasspath.getLocation(), fromFileSystem.getLocation());
+    }
+
+    @Test
+    public void readsLargeFiles() throws Exception {
+        File file = File.createTempFile("large", ".groovy");
+        file.deleteOnExit();
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 100 * 1024) {
+            content.append("// äöü comment line\n");
+        }
+        write(file, content.toString());
+
+        assertEquals(content.toString(), DefinitionSources.load(file.getAbsolutePath()).getText());
+        assertTrue("file is still locked after reading", file.delete());
+    }
+
+    private static File createTempDirectory() throws Exception {
+        File directory = File.createTempFile("definitions", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.deleteOnExit();
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+}